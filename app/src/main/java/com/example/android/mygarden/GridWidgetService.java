@@ -11,6 +11,9 @@ import android.widget.RemoteViewsService;
 
 import com.example.android.mygarden.provider.PlantContract;
 import com.example.android.mygarden.ui.PlantDetailActivity;
+import com.example.android.mygarden.utils.PlantMetrics;
+import com.example.android.mygarden.utils.PlantSnapshot;
+import com.example.android.mygarden.utils.PlantSnapshots;
 import com.example.android.mygarden.utils.PlantUtils;
 
 import static com.example.android.mygarden.provider.PlantContract.BASE_CONTENT_URI;
@@ -28,8 +31,8 @@ class GridRemoteViewsFactory implements RemoteViewsService.RemoteViewsFactory {
 
     // needed to access ContentResolver later
     Context context;
-    // needed to get the plant data from the database
-    Cursor cursor;
+    // the plants loaded the last time the data set changed, indexed by position
+    PlantSnapshot plants = PlantSnapshot.EMPTY;
 
     public GridRemoteViewsFactory(Context context) {
         this.context = context;
@@ -42,37 +45,34 @@ class GridRemoteViewsFactory implements RemoteViewsService.RemoteViewsFactory {
     // Called on start and when notifyAppWidgetViewDataChanged is called
     @Override
     public void onDataSetChanged() {
-        Uri PLANTS_URI = BASE_CONTENT_URI.buildUpon().appendPath(PATH_PLANTS).build();
-
-        if (cursor != null)
-        {
-            cursor.close();
+        long startNanos = PlantMetrics.beginSection("GridRemoteViewsFactory.onDataSetChanged");
+        try {
+            Uri PLANTS_URI = BASE_CONTENT_URI.buildUpon().appendPath(PATH_PLANTS).build();
+
+            // Get all plant info ordered by creation time
+            Cursor cursor = context.getContentResolver().query(
+                    PLANTS_URI,
+                    PlantSnapshots.PROJECTION,
+                    null,
+                    null,
+                    PlantContract.PlantEntry.COLUMN_CREATION_TIME);
+            try {
+                plants = PlantSnapshots.fromCursor(cursor, System.currentTimeMillis());
+            } finally {
+                if (cursor != null) cursor.close();
+            }
+        } finally {
+            PlantMetrics.endSection("GridRemoteViewsFactory.onDataSetChanged", startNanos);
         }
-
-        // Get all plant info ordered by creation time
-        cursor = context.getContentResolver().query(
-                PLANTS_URI,
-                null,
-                null,
-                null,
-                PlantContract.PlantEntry.COLUMN_CREATION_TIME);
     }
 
     @Override
     public void onDestroy() {
-        cursor.close();
     }
 
     @Override
     public int getCount() {
-        if (cursor != null)
-        {
-            return cursor.getCount();
-        }
-        else
-        {
-            return 0;
-        }
+        return plants.size();
     }
 
     /**
@@ -83,47 +83,39 @@ class GridRemoteViewsFactory implements RemoteViewsService.RemoteViewsFactory {
      */
     @Override
     public RemoteViews getViewAt(int position) {
-
-        // extract details of the plant at the position
-        int plantImageRes = R.drawable.grass;
-        long plantId = PlantContract.INVALID_PLANT_ID;
-        if (cursor != null && cursor.getCount() > 0) {
-
-            cursor.moveToPosition(position);
-
-            int idIndex = cursor.getColumnIndex(PlantContract.PlantEntry._ID);
-            int createTimeIndex = cursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_CREATION_TIME);
-            int waterTimeIndex = cursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME);
-            int plantTypeIndex = cursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_PLANT_TYPE);
-
-            plantId = cursor.getLong(idIndex);
-            long timeNow = System.currentTimeMillis();
-            long createdAt = cursor.getLong(createTimeIndex);
-            long wateredAt = cursor.getLong(waterTimeIndex);
-            int plantType = cursor.getInt(plantTypeIndex);
-
-            plantImageRes = PlantUtils.getPlantImageRes(
-                    context, timeNow - createdAt, timeNow - wateredAt, plantType);
+        long startNanos = PlantMetrics.beginSection("GridRemoteViewsFactory.getViewAt");
+        try {
+            // extract details of the plant at the position
+            int plantImageRes = R.drawable.grass;
+            long plantId = PlantContract.INVALID_PLANT_ID;
+            PlantSnapshot snapshot = plants;
+            if (position < snapshot.size()) {
+                plantId = snapshot.getId(position);
+                plantImageRes = PlantUtils.getPlantImgRes(context, snapshot.getType(position),
+                        snapshot.getStatus(position), snapshot.getSize(position));
+            }
+            RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.plant_widget);
+
+            // update widget plant image
+            views.setImageViewResource(R.id.widget_plant_image, plantImageRes);
+            // update ID text
+            views.setTextViewText(R.id.widget_plant_id, String.valueOf(plantId));
+
+            // Always hide the water drop button in GridView mode.
+            // We don't want it cluttering the GridView
+            views.setViewVisibility(R.id.widget_water_button, View.GONE);
+
+            // Fill in the onClick PendingIntent Template using the specific plant Id for each item individually
+            Bundle extras = new Bundle();
+            extras.putLong(PlantDetailActivity.EXTRA_PLANT_ID, plantId);
+            Intent fillInIntent = new Intent();
+            fillInIntent.putExtras(extras);
+            views.setOnClickFillInIntent(R.id.widget_plant_image, fillInIntent);
+
+            return views;
+        } finally {
+            PlantMetrics.endSection("GridRemoteViewsFactory.getViewAt", startNanos);
         }
-        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.plant_widget);
-
-        // update widget plant image
-        views.setImageViewResource(R.id.widget_plant_image, plantImageRes);
-        // update ID text
-        views.setTextViewText(R.id.widget_plant_id, String.valueOf(plantId));
-
-        // Always hide the water drop button in GridView mode.
-        // We don't want it cluttering the GridView
-        views.setViewVisibility(R.id.widget_water_button, View.GONE);
-
-        // Fill in the onClick PendingIntent Template using the specific plant Id for each item individually
-        Bundle extras = new Bundle();
-        extras.putLong(PlantDetailActivity.EXTRA_PLANT_ID, plantId);
-        Intent fillInIntent = new Intent();
-        fillInIntent.putExtras(extras);
-        views.setOnClickFillInIntent(R.id.widget_plant_image, fillInIntent);
-
-        return views;
     }
 
     @Override
@@ -139,7 +131,10 @@ class GridRemoteViewsFactory implements RemoteViewsService.RemoteViewsFactory {
 
     @Override
     public long getItemId(int i) {
-        return i;
+        // The plant's database ID, so the launcher can keep reusing its view when other
+        // plants are added or removed
+        PlantSnapshot snapshot = plants;
+        return i < snapshot.size() ? snapshot.getId(i) : PlantContract.INVALID_PLANT_ID;
     }
 
     @Override
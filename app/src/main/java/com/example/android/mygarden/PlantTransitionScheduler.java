@@ -0,0 +1,103 @@
+package com.example.android.mygarden;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.Build;
+
+import com.example.android.mygarden.provider.PlantContract;
+import com.example.android.mygarden.utils.PlantLifecycle;
+
+/**
+ * Schedules the widgets to be updated exactly when the next plant in the garden changes its
+ * looks (status, size or whether it can be watered), instead of polling on a fixed period.
+ * <p>
+ * The alarm doesn't wake the device up: widgets are only visible while the device is awake,
+ * so an update that comes due while it sleeps is delivered as soon as it wakes up.
+ */
+public class PlantTransitionScheduler {
+
+    private PlantTransitionScheduler() {
+    }
+
+    /**
+     * Schedules a single alarm for the next plant transition after now, replacing any previous
+     * one, or cancels it if no plant will change anymore or there are no widgets. Queries the
+     * provider, so it must not be called on the main thread.
+     *
+     * @param context The context
+     */
+    public static void scheduleNextTransition(Context context) {
+        // Nothing to keep up to date without widgets
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        ComponentName name = new ComponentName(context, PlantWidgetProvider.class);
+        if (appWidgetManager.getAppWidgetIds(name).length == 0) {
+            cancel(context);
+            return;
+        }
+
+        long timeNow = System.currentTimeMillis();
+        long nextTransition = Long.MAX_VALUE;
+        for (long threshold : PlantLifecycle.WATER_AGE_THRESHOLDS) {
+            nextTransition = Math.min(nextTransition, queryNextTransition(context,
+                    PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME, threshold, timeNow));
+        }
+        for (long threshold : PlantLifecycle.PLANT_AGE_THRESHOLDS) {
+            nextTransition = Math.min(nextTransition, queryNextTransition(context,
+                    PlantContract.PlantEntry.COLUMN_CREATION_TIME, threshold, timeNow));
+        }
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent updateIntent = getUpdateIntent(context);
+        if (nextTransition == Long.MAX_VALUE) {
+            alarmManager.cancel(updateIntent);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            alarmManager.setExact(AlarmManager.RTC, nextTransition, updateIntent);
+        } else {
+            alarmManager.set(AlarmManager.RTC, nextTransition, updateIntent);
+        }
+    }
+
+    /**
+     * Cancels the scheduled alarm, e.g. once there are no widgets left to update
+     *
+     * @param context The context
+     */
+    public static void cancel(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.cancel(getUpdateIntent(context));
+    }
+
+    /**
+     * Returns the earliest time after timeNow at which some plant's column value plus the given
+     * threshold is crossed. A single MIN over an indexed range, so the cost doesn't grow with
+     * the size of the garden.
+     */
+    private static long queryNextTransition(Context context, String column, long threshold,
+                                            long timeNow) {
+        // Thresholds are compared with ">", so the transition happens at value + threshold + 1
+        Cursor cursor = context.getContentResolver().query(
+                PlantContract.PlantEntry.CONTENT_URI,
+                new String[]{"MIN(" + column + ")"},
+                column + ">=?",
+                new String[]{String.valueOf(timeNow - threshold)},
+                null);
+        if (cursor == null) return Long.MAX_VALUE;
+        try {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) return Long.MAX_VALUE;
+            return cursor.getLong(0) + threshold + 1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static PendingIntent getUpdateIntent(Context context) {
+        Intent intent = new Intent(context, PlantWateringService.class);
+        intent.setAction(PlantWateringService.ACTION_UPDATE_PLANT_WIDGETS);
+        return PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+}
@@ -1,23 +1,16 @@
 package com.example.android.mygarden;
 
 import android.app.IntentService;
-import android.appwidget.AppWidgetManager;
-import android.content.ComponentName;
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.annotation.RequiresApi;
 
 import com.example.android.mygarden.provider.PlantContract;
-import com.example.android.mygarden.utils.PlantUtils;
-
-import static com.example.android.mygarden.provider.PlantContract.BASE_CONTENT_URI;
-import static com.example.android.mygarden.provider.PlantContract.PATH_PLANTS;
+import com.example.android.mygarden.utils.PlantMetrics;
+import com.example.android.mygarden.utils.PlantSnapshots;
 
 /**
  * An {@link IntentService} subclass for handling asynchronous task requests in
@@ -27,6 +20,8 @@ public class PlantWateringService extends IntentService {
 
     public static final String ACTION_WATER_PLANT =
             "com.example.android.mygarden.action.water_plants";
+    public static final String ACTION_WATER_ALL_PLANTS =
+            "com.example.android.mygarden.action.water_all_plants";
     public static final String ACTION_UPDATE_PLANT_WIDGETS =
             "com.example.android.mygarden.action.update_plant_widgets";
 
@@ -50,18 +45,29 @@ public class PlantWateringService extends IntentService {
     }
 
     /**
-     * Starts this service to perform UpdatePlantWidgets action with the given parameters. If
-     * the service is already performing a task this action will be queued.
+     * Starts this service to perform WaterAllPlants action, watering every living plant that
+     * can currently be watered. If the service is already performing a task this action will
+     * be queued.
      *
      * @see IntentService
      */
-    public static void startActionUpdatePlantWidgets(Context context)
-    {
+    public static void startActionWaterAllPlants(Context context) {
         Intent intent = new Intent(context, PlantWateringService.class);
-        intent.setAction(ACTION_UPDATE_PLANT_WIDGETS);
+        intent.setAction(ACTION_WATER_ALL_PLANTS);
         context.startService(intent);
     }
 
+    /**
+     * Requests this service to perform UpdatePlantWidgets action. Requests are coalesced by
+     * PlantWidgetUpdateScheduler, so a burst of requests results in a single update.
+     *
+     * @see PlantWidgetUpdateScheduler
+     */
+    public static void startActionUpdatePlantWidgets(Context context)
+    {
+        PlantWidgetUpdateScheduler.requestUpdate(context);
+    }
+
     /**
      * @param intent
      */
@@ -73,35 +79,69 @@ public class PlantWateringService extends IntentService {
 
             if (ACTION_WATER_PLANT.equals(action)) {
                 final long plantId = intent.getLongExtra(EXTRA_PLANT_ID, PlantContract.INVALID_PLANT_ID);
-                handleActionWaterPlant(plantId);
+                long startNanos = PlantMetrics.beginSection("PlantWateringService.waterPlant");
+                try {
+                    handleActionWaterPlant(plantId);
+                } finally {
+                    PlantMetrics.endSection("PlantWateringService.waterPlant", startNanos);
+                }
+            }
+            else if (ACTION_WATER_ALL_PLANTS.equals(action))
+            {
+                long startNanos = PlantMetrics.beginSection("PlantWateringService.waterAllPlants");
+                try {
+                    handleActionWaterAllPlants();
+                } finally {
+                    PlantMetrics.endSection("PlantWateringService.waterAllPlants", startNanos);
+                }
             }
             else if (ACTION_UPDATE_PLANT_WIDGETS.equals(action))
             {
-                handleActionUpdatePlantWidgets();
+                PlantWidgetUpdateScheduler.onUpdateStarted();
+                long startNanos = PlantMetrics.beginSection("PlantWateringService.updatePlantWidgets");
+                try {
+                    handleActionUpdatePlantWidgets();
+                } finally {
+                    PlantMetrics.endSection("PlantWateringService.updatePlantWidgets", startNanos);
+                }
             }
         }
     }
 
     /**
      * Handle action WaterPlant in the provided background thread with the provided
-     * parameters.
+     * parameters. The provider waters the plant and returns the thirstiest plant in a single
+     * call, which the widgets are updated with directly.
      */
+    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
     private void handleActionWaterPlant(long plantId) {
-        Uri SINGLE_PLANT_URI = ContentUris.withAppendedId(
-                BASE_CONTENT_URI.buildUpon().appendPath(PATH_PLANTS).build(), plantId);
-        ContentValues contentValues = new ContentValues();
-        long timeNow = System.currentTimeMillis();
-        contentValues.put(PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME, timeNow);
-
-        // Update only if that plant is still alive
-        getContentResolver().update(
-                SINGLE_PLANT_URI,
-                contentValues,
-                PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME + ">?",
-                new String[]{String.valueOf(timeNow - PlantUtils.MAX_AGE_WITHOUT_WATER)});
-
+        if (plantId == PlantContract.INVALID_PLANT_ID) return;
+        // The provider only waters the plant if it's still alive
+        Bundle result = getContentResolver().call(
+                PlantContract.PlantEntry.CONTENT_URI,
+                PlantContract.METHOD_WATER_PLANT,
+                String.valueOf(plantId),
+                null);
         // Always update widgets after watering plants
-        startActionUpdatePlantWidgets(this);
+        if (result != null) updatePlantWidgets(result);
+    }
+
+    /**
+     * Handle action WaterAllPlants in the provided background thread. All plants that are still
+     * alive and haven't been watered for at least MIN_AGE_BETWEEN_WATER are watered with a
+     * single update, then the widgets are refreshed once.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+    private void handleActionWaterAllPlants() {
+        // The provider waters the whole garden and returns the thirstiest plant in one call
+        Bundle result = getContentResolver().call(
+                PlantContract.PlantEntry.CONTENT_URI,
+                PlantContract.METHOD_WATER_ALL,
+                null,
+                null);
+        if (result != null && result.getInt(PlantContract.KEY_WATERED_COUNT) > 0) {
+            updatePlantWidgets(result);
+        }
     }
 
     /**
@@ -110,60 +150,37 @@ public class PlantWateringService extends IntentService {
     @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
     private void handleActionUpdatePlantWidgets()
     {
-        // Query to get the plant that's most in need for water (last watered)
-        Uri PLANT_URI = BASE_CONTENT_URI.buildUpon().appendPath(PATH_PLANTS).build();
-        Cursor cursor = getContentResolver().query(
-                PLANT_URI,
-                null,
-                null,
+        // This runs at the plant transitions PlantTransitionScheduler wakes the app up for.
+        // Move the plant counts along, so reading them has little left to move
+        getContentResolver().call(
+                PlantContract.PlantEntry.CONTENT_URI,
+                PlantContract.METHOD_ADVANCE_COUNTS,
                 null,
-                PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME);
-
-        // Default image in case our garden is empty
-        int plantImageRes = R.drawable.grass;
-        // Default to hide the water drop button
-        boolean canWater = false;
-        long plantId = PlantContract.INVALID_PLANT_ID;
-
-        // Extract the plant details
-        if (cursor != null && cursor.getCount() > 0)
-        {
-            cursor.moveToFirst();
-
-            int idIndex = cursor.getColumnIndex(PlantContract.PlantEntry._ID);
-            int createTimeIndex = cursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_CREATION_TIME);
-            int waterTimeIndex = cursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME);
-            int plantTypeIndex = cursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_PLANT_TYPE);
-
-            plantId = cursor.getLong(idIndex);
-
-            long timeNow = System.currentTimeMillis();
-
-            // details of the plant
-            long createdAt = cursor.getLong(createTimeIndex);
-            long wateredAt = cursor.getLong(waterTimeIndex);
-            int plantType = cursor.getInt(plantTypeIndex);
-
-            // can't water the plant if it’s been less than MIN_AGE_BETWEEN_WATER since it was last watered
-            canWater = (timeNow - wateredAt) > PlantUtils.MIN_AGE_BETWEEN_WATER &&
-                    (timeNow - wateredAt) < PlantUtils.MAX_AGE_WITHOUT_WATER;
+                null);
 
-            // close the cursor once we're done using it
-            cursor.close();
-
-            plantImageRes = PlantUtils.getPlantImageRes(
-                    this, timeNow - createdAt, timeNow - wateredAt, plantType);
-
-            AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
-            ComponentName name = new ComponentName(this, PlantWidgetProvider.class);
-            int[] appWidgetIds = appWidgetManager.getAppWidgetIds(name);
+        // Get the plant that's most in need for water (last watered), without a Cursor
+        Bundle thirstiest = getContentResolver().call(
+                PlantContract.PlantEntry.CONTENT_URI,
+                PlantContract.METHOD_GET_THIRSTIEST,
+                null,
+                null);
+        if (thirstiest != null) updatePlantWidgets(thirstiest);
+    }
 
-            // Trigger the data update to handle the GridView widgets and force a data refresh
-            appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.garden_grid_view);
+    /**
+     * Updates all widgets, including the data of the GridView widgets, to show the thirstiest
+     * plant returned by the provider. Widgets whose state didn't change aren't pushed again,
+     * so this is cheap for an empty garden too.
+     *
+     * @param thirstiest A provider call() result holding the thirstiest plant, if there is one
+     */
+    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+    private void updatePlantWidgets(Bundle thirstiest)
+    {
+        PlantWidgetProvider.updatePlantWidgets(this,
+                PlantSnapshots.fromBundle(thirstiest, System.currentTimeMillis()));
 
-            // Update all widgets
-            PlantWidgetProvider.updatePlantWidgets(this, appWidgetManager,
-                    plantImageRes, plantId, canWater, appWidgetIds);
-        }
+        // Update the widgets again as soon as the next plant changes its looks
+        PlantTransitionScheduler.scheduleNextTransition(this);
     }
 }
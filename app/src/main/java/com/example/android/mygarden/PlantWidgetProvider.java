@@ -3,17 +3,26 @@ package com.example.android.mygarden;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.annotation.RequiresApi;
+import android.util.SparseArray;
 import android.view.View;
 import android.widget.RemoteViews;
 
 import com.example.android.mygarden.provider.PlantContract;
 import com.example.android.mygarden.ui.MainActivity;
 import com.example.android.mygarden.ui.PlantDetailActivity;
+import com.example.android.mygarden.utils.PlantMetrics;
+import com.example.android.mygarden.utils.PlantSnapshot;
+import com.example.android.mygarden.utils.PlantSnapshots;
+import com.example.android.mygarden.utils.PlantUtils;
+
+import java.util.Arrays;
 
 /**
  * Implementation of App Widget functionality.
@@ -24,35 +33,139 @@ public class PlantWidgetProvider extends AppWidgetProvider {
     // otherwise display single plant
     public static final int SINGLE_PLANT_WIDTH = 300;
 
+    // The state last pushed to each widget, keyed by widget Id, so unchanged widgets
+    // aren't pushed again. Guarded by its own lock.
+    private static final SparseArray<RenderedState> sRenderedStates = new SparseArray<>();
+
+    /**
+     * Updates a single widget, pushing only what changed since it was last rendered
+     *
+     * @return True if the widget displays the garden grid and was already doing so, meaning
+     * its grid data still needs to be refreshed
+     */
     @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
-    static void updateAppWidget(Context context, AppWidgetManager appWidgetManager,
-                                int imgRes, long plantId, boolean showWater, int appWidgetId) {
+    static boolean updateAppWidget(Context context, AppWidgetManager appWidgetManager,
+                                   int imgRes, long plantId, boolean showWater, int appWidgetId) {
 
         // Get current width to decide on single plant vs garden grid view
         Bundle widgetOptions = appWidgetManager.getAppWidgetOptions(appWidgetId);
         int minWidth = widgetOptions.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
+        boolean singlePlant = minWidth < SINGLE_PLANT_WIDTH;
+
+        RenderedState lastState;
+        synchronized (sRenderedStates) {
+            lastState = sRenderedStates.get(appWidgetId);
+            sRenderedStates.put(appWidgetId,
+                    new RenderedState(singlePlant, imgRes, plantId, showWater));
+        }
 
         // change the view to a single plant or grid view depending on the widget's current width
         RemoteViews remoteViews;
-        if (minWidth < SINGLE_PLANT_WIDTH)
+        if (singlePlant)
         {
+            if (lastState != null && lastState.mSinglePlant
+                    && lastState.mImgRes == imgRes && lastState.mPlantId == plantId)
+            {
+                // Same plant and image, at most the water drop button needs to change
+                if (lastState.mShowWater != showWater)
+                {
+                    RemoteViews waterViews = new RemoteViews(context.getPackageName(), R.layout.plant_widget);
+                    setWaterButton(context, waterViews, plantId, showWater);
+                    appWidgetManager.partiallyUpdateAppWidget(appWidgetId, waterViews);
+                    PlantMetrics.increment("PlantWidgetProvider.partialUpdates", 1);
+                } else {
+                    PlantMetrics.increment("PlantWidgetProvider.skippedUpdates", 1);
+                }
+                return false;
+            }
             remoteViews = getSinglePlantRemoteViews(context, imgRes, plantId, showWater);
         }
         else
         {
+            // The grid's views don't depend on the plants, only its data needs a refresh
+            if (lastState != null && !lastState.mSinglePlant) return true;
             remoteViews = getGardenGridRemoteViews(context);
         }
 
         // Instruct the widget manager to update the widget
         appWidgetManager.updateAppWidget(appWidgetId, remoteViews);
+        PlantMetrics.increment("PlantWidgetProvider.fullUpdates", 1);
+        return false;
+    }
+
+    /**
+     * Handles taps on the water drop button directly in the widget's process, skipping the
+     * round-trips through PlantWateringService
+     */
+    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (PlantWateringService.ACTION_WATER_PLANT.equals(intent.getAction())) {
+            long plantId = intent.getLongExtra(PlantWateringService.EXTRA_PLANT_ID,
+                    PlantContract.INVALID_PLANT_ID);
+            // The water drop is only shown for an actual plant, ignore malformed intents
+            if (plantId != PlantContract.INVALID_PLANT_ID) {
+                waterPlant(context.getApplicationContext(), plantId, goAsync());
+            }
+            return;
+        }
+        super.onReceive(context, intent);
+    }
+
+    /**
+     * Waters the tapped plant and redraws the widgets off the main thread: one provider call
+     * waters it and returns the new thirstiest plant from the same transaction, then only the
+     * widgets whose looks changed are pushed. The tap-to-redraw latency is traced.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+    private static void waterPlant(final Context context, final long plantId,
+                                   final PendingResult pendingResult) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                long startNanos = PlantMetrics.beginSection("PlantWidgetProvider.waterPlant");
+                try {
+                    Bundle result = context.getContentResolver().call(
+                            PlantContract.PlantEntry.CONTENT_URI,
+                            PlantContract.METHOD_WATER_PLANT,
+                            String.valueOf(plantId),
+                            null);
+                    if (result != null) {
+                        updatePlantWidgets(context,
+                                PlantSnapshots.fromBundle(result, System.currentTimeMillis()));
+                    }
+                    // The watered plant changes later than it would have. This must happen
+                    // before the broadcast finishes, the process may be killed right after.
+                    PlantTransitionScheduler.scheduleNextTransition(context);
+                } finally {
+                    PlantMetrics.endSection("PlantWidgetProvider.waterPlant", startNanos);
+                    pendingResult.finish();
+                }
+            }
+        });
     }
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        // The system asks for these widgets to be rendered again, so push them in full
+        forgetRenderedStates(appWidgetIds);
         // Start the intent service update widget action. The service takes care of updating the widgets' UI.
         PlantWateringService.startActionUpdatePlantWidgets(context);
     }
 
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        forgetRenderedStates(appWidgetIds);
+    }
+
+    private static void forgetRenderedStates(int[] appWidgetIds) {
+        synchronized (sRenderedStates) {
+            for (int appWidgetId : appWidgetIds) {
+                sRenderedStates.remove(appWidgetId);
+            }
+        }
+    }
+
     /**
      * Updates all widget instances given the widget Ids and display information
      *
@@ -68,9 +181,62 @@ public class PlantWidgetProvider extends AppWidgetProvider {
     public static void updatePlantWidgets(Context context, AppWidgetManager appWidgetManager,
                                           int imgRes, long plantId, boolean showWater, int[] appWidgetIds)
     {
-        for (int appWidgetId : appWidgetIds) {
-            updateAppWidget(context, appWidgetManager, imgRes, plantId, showWater, appWidgetId);
+        // The time spent in AppWidgetManager, pushing the widgets
+        long startNanos = PlantMetrics.beginSection("PlantWidgetProvider.pushWidgets");
+        try {
+            int[] gridWidgetIds = new int[appWidgetIds.length];
+            int gridWidgetCount = 0;
+            for (int appWidgetId : appWidgetIds) {
+                if (updateAppWidget(context, appWidgetManager, imgRes, plantId, showWater, appWidgetId)) {
+                    gridWidgetIds[gridWidgetCount++] = appWidgetId;
+                }
+            }
+
+            // Trigger the data update to handle the GridView widgets and force a data refresh.
+            // Grids that were just pushed load their data anyway.
+            if (gridWidgetCount > 0) {
+                appWidgetManager.notifyAppWidgetViewDataChanged(
+                        Arrays.copyOf(gridWidgetIds, gridWidgetCount), R.id.garden_grid_view);
+            }
+        } finally {
+            PlantMetrics.endSection("PlantWidgetProvider.pushWidgets", startNanos);
+        }
+    }
+
+    /**
+     * Updates all widget instances to show the given thirstiest plant
+     *
+     * @param context    The calling context
+     * @param thirstiest A snapshot with the thirstiest plant first, or an empty one if the
+     *                   garden is empty
+     */
+    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+    static void updatePlantWidgets(Context context, PlantSnapshot thirstiest)
+    {
+        // Default image in case our garden is empty
+        int plantImageRes = R.drawable.grass;
+        // Default to hide the water drop button
+        boolean canWater = false;
+        long plantId = PlantContract.INVALID_PLANT_ID;
+
+        if (thirstiest.size() > 0)
+        {
+            long startNanos = PlantMetrics.beginSection("PlantWidgetProvider.resolvePlantImage");
+            try {
+                plantId = thirstiest.getId(0);
+                // can't water the plant if it’s been less than MIN_AGE_BETWEEN_WATER since it was last watered
+                canWater = thirstiest.canWater(0);
+                plantImageRes = PlantUtils.getPlantImgRes(context, thirstiest.getType(0),
+                        thirstiest.getStatus(0), thirstiest.getSize(0));
+            } finally {
+                PlantMetrics.endSection("PlantWidgetProvider.resolvePlantImage", startNanos);
+            }
         }
+
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+                new ComponentName(context, PlantWidgetProvider.class));
+        updatePlantWidgets(context, appWidgetManager, plantImageRes, plantId, canWater, appWidgetIds);
     }
 
     /**
@@ -114,16 +280,31 @@ public class PlantWidgetProvider extends AppWidgetProvider {
         views.setOnClickPendingIntent(R.id.widget_plant_image, pendingIntent);
 
         // Show/hide the water drop button
+        setWaterButton(context, views, plantId, showWater);
+
+        return views;
+    }
+
+    /**
+     * Shows or hides the water drop button of the single plant mode widget
+     *
+     * @param context   The context
+     * @param views     The RemoteViews of the single plant mode widget
+     * @param plantId   The database plant Id for watering button functionality
+     * @param showWater Boolean to either show/hide the water drop
+     */
+    private static void setWaterButton(Context context, RemoteViews views, long plantId, boolean showWater)
+    {
         if (showWater)
         {
             views.setViewVisibility(R.id.widget_water_button, View.VISIBLE);
 
-            // Add the watering service click handler
-            Intent wateringIntent = new Intent(context, PlantWateringService.class);
+            // Add the watering click handler, which is handled by this provider
+            Intent wateringIntent = new Intent(context, PlantWidgetProvider.class);
             wateringIntent.setAction(PlantWateringService.ACTION_WATER_PLANT);
             // Add the plant ID as extra to water only that plant when clicked
             wateringIntent.putExtra(PlantWateringService.EXTRA_PLANT_ID, plantId);
-            PendingIntent wateringPendingIntent = PendingIntent.getService(
+            PendingIntent wateringPendingIntent = PendingIntent.getBroadcast(
                     context,
                     0,
                     wateringIntent,
@@ -134,8 +315,6 @@ public class PlantWidgetProvider extends AppWidgetProvider {
         {
             views.setViewVisibility(R.id.widget_water_button, View.INVISIBLE);
         }
-
-        return views;
     }
 
     /**
@@ -171,6 +350,23 @@ public class PlantWidgetProvider extends AppWidgetProvider {
         super.onAppWidgetOptionsChanged(context, appWidgetManager, appWidgetId, newOptions);
     }
 
+    /**
+     * What was last pushed to a widget
+     */
+    private static class RenderedState {
+        final boolean mSinglePlant;
+        final int mImgRes;
+        final long mPlantId;
+        final boolean mShowWater;
+
+        RenderedState(boolean singlePlant, int imgRes, long plantId, boolean showWater) {
+            mSinglePlant = singlePlant;
+            mImgRes = imgRes;
+            mPlantId = plantId;
+            mShowWater = showWater;
+        }
+    }
+
     @Override
     public void onEnabled(Context context) {
         // Enter relevant functionality for when the first widget is created
@@ -178,7 +374,8 @@ public class PlantWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onDisabled(Context context) {
-        // Enter relevant functionality for when the last widget is disabled
+        // No widgets are left to update when plants change
+        PlantTransitionScheduler.cancel(context);
     }
 }
 
@@ -0,0 +1,75 @@
+package com.example.android.mygarden;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.example.android.mygarden.utils.PlantMetrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces widget update requests. Waterings, inserts, deletes and widget callbacks tend to
+ * come in bursts; instead of queueing one full update per request, requests are debounced
+ * and any number of them made before the update starts are handled by a single run of
+ * PlantWateringService's UpdatePlantWidgets action.
+ * <p>
+ * The requests, the ones absorbed by a pending update and the updates that ran are counted
+ * in PlantMetrics.
+ */
+public class PlantWidgetUpdateScheduler {
+
+    // How long to wait for more requests before starting the update
+    private static final long DEBOUNCE_MILLIS = 200;
+    // A pending update that hasn't started after this long is assumed lost, e.g. because the
+    // service couldn't be started, and doesn't absorb new requests anymore
+    private static final long STALE_MILLIS = 10 * 1000;
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    // Time at which the pending update was requested, or 0 if no update is pending
+    private static final AtomicLong sPendingSince = new AtomicLong();
+
+    private PlantWidgetUpdateScheduler() {
+    }
+
+    /**
+     * Requests the widgets to be updated. If an update is already pending, it will pick up
+     * this request's changes as well and no new update is scheduled.
+     *
+     * @param context The calling context
+     */
+    public static void requestUpdate(Context context) {
+        PlantMetrics.increment("PlantWidgetUpdateScheduler.requests", 1);
+        long timeNow = SystemClock.elapsedRealtime();
+        while (true) {
+            long pendingSince = sPendingSince.get();
+            if (pendingSince != 0 && timeNow - pendingSince < STALE_MILLIS) {
+                PlantMetrics.increment("PlantWidgetUpdateScheduler.collapsedRequests", 1);
+                return;
+            }
+            if (sPendingSince.compareAndSet(pendingSince, timeNow)) break;
+        }
+
+        final Context appContext = context.getApplicationContext();
+        sHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                Intent intent = new Intent(appContext, PlantWateringService.class);
+                intent.setAction(PlantWateringService.ACTION_UPDATE_PLANT_WIDGETS);
+                appContext.startService(intent);
+            }
+        }, DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Called by PlantWateringService right before it reads the garden to update the widgets.
+     * Requests made from now on need a new update, since they may come after that read.
+     */
+    static void onUpdateStarted() {
+        sPendingSince.set(0);
+        PlantMetrics.increment("PlantWidgetUpdateScheduler.updates", 1);
+    }
+}
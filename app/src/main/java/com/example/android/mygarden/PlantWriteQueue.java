@@ -0,0 +1,336 @@
+package com.example.android.mygarden;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LongSparseArray;
+import android.util.Log;
+
+import com.example.android.mygarden.provider.PlantContract;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.utils.PlantSnapshot;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Applies garden mutations (inserts, updates and deletes) off the main thread. Writes are
+ * queued on a single background thread; all writes queued while an earlier batch was being
+ * applied are applied together in one transaction. Callers are told on the main thread once
+ * their write completed, then the widgets are updated once per batch.
+ * <p>
+ * Plants added with insertPlant and removed with deletePlant are also tracked until the
+ * loaded garden reflects them, so the garden list can show them right away through
+ * applyPendingWrites, and drops them again if the write fails. These methods and the
+ * listeners run on the main thread.
+ */
+public class PlantWriteQueue {
+
+    /**
+     * Called on the main thread once a queued write was applied or failed
+     */
+    public interface OnWriteCompleteListener {
+        /**
+         * @param result The result of the write, or null if it failed
+         */
+        void onWriteComplete(@Nullable ContentProviderResult result);
+    }
+
+    /**
+     * Called on the main thread when plants are added or removed by pending writes, or when
+     * such a write completed
+     */
+    public interface OnPendingWritesChangedListener {
+        void onPendingWritesChanged();
+    }
+
+    private static final String TAG = PlantWriteQueue.class.getSimpleName();
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    // Writes waiting for the next batch, guarded by sLock
+    private static final Object sLock = new Object();
+    private static ArrayList<ContentProviderOperation> sPendingOperations = new ArrayList<>();
+    private static ArrayList<OnWriteCompleteListener> sPendingListeners = new ArrayList<>();
+
+    // Plants added by insertPlant and removed by deletePlant that the loaded garden may not
+    // reflect yet. Only used on the main thread.
+    private static final ArrayList<PendingInsert> sPendingInserts = new ArrayList<>();
+    // Removed plant IDs, mapped to whether their delete was applied
+    private static final LongSparseArray<Boolean> sPendingDeletes = new LongSparseArray<>();
+    private static final ArrayList<OnPendingWritesChangedListener> sPendingWritesListeners =
+            new ArrayList<>();
+    // Plants that are still being added don't have a database ID, they get a negative one
+    // until then. INVALID_PLANT_ID is -1, so start below it.
+    private static long sNextPendingId = PlantContract.INVALID_PLANT_ID - 1;
+
+    private PlantWriteQueue() {
+    }
+
+    /**
+     * Queues the insert of a new plant, watered at its creation. The plant is part of
+     * applyPendingWrites right away.
+     *
+     * @param context   The calling context
+     * @param plantType The type of the new plant
+     * @param timeNow   The creation time of the new plant
+     * @param listener  Told about the result on the main thread, or null
+     */
+    public static void insertPlant(Context context, int plantType, long timeNow,
+                                   @Nullable final OnWriteCompleteListener listener) {
+        final PendingInsert insert = new PendingInsert(sNextPendingId--, plantType, timeNow);
+        sPendingInserts.add(insert);
+        ContentProviderOperation operation = ContentProviderOperation
+                .newInsert(PlantEntry.CONTENT_URI)
+                .withValue(PlantEntry.COLUMN_PLANT_TYPE, plantType)
+                .withValue(PlantEntry.COLUMN_CREATION_TIME, timeNow)
+                .withValue(PlantEntry.COLUMN_LAST_WATERED_TIME, timeNow)
+                .build();
+        enqueue(context, operation, new OnWriteCompleteListener() {
+            @Override
+            public void onWriteComplete(@Nullable ContentProviderResult result) {
+                if (result == null || result.uri == null) {
+                    sPendingInserts.remove(insert);
+                } else {
+                    insert.mPlantId = ContentUris.parseId(result.uri);
+                }
+                notifyPendingWritesChanged();
+                if (listener != null) listener.onWriteComplete(result);
+            }
+        });
+        notifyPendingWritesChanged();
+    }
+
+    /**
+     * Queues the delete of a plant. The plant is left out of applyPendingWrites right away.
+     *
+     * @param context  The calling context
+     * @param plantId  The plant to delete
+     * @param listener Told about the result on the main thread, or null
+     */
+    public static void deletePlant(Context context, final long plantId,
+                                   @Nullable final OnWriteCompleteListener listener) {
+        sPendingDeletes.put(plantId, false);
+        ContentProviderOperation operation = ContentProviderOperation
+                .newDelete(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId))
+                .build();
+        enqueue(context, operation, new OnWriteCompleteListener() {
+            @Override
+            public void onWriteComplete(@Nullable ContentProviderResult result) {
+                if (result == null) {
+                    sPendingDeletes.remove(plantId);
+                } else {
+                    sPendingDeletes.put(plantId, true);
+                }
+                notifyPendingWritesChanged();
+                if (listener != null) listener.onWriteComplete(result);
+            }
+        });
+        notifyPendingWritesChanged();
+    }
+
+    public static void addOnPendingWritesChangedListener(OnPendingWritesChangedListener listener) {
+        sPendingWritesListeners.add(listener);
+    }
+
+    public static void removeOnPendingWritesChangedListener(OnPendingWritesChangedListener listener) {
+        sPendingWritesListeners.remove(listener);
+    }
+
+    private static void notifyPendingWritesChanged() {
+        for (int i = sPendingWritesListeners.size() - 1; i >= 0; i--) {
+            sPendingWritesListeners.get(i).onPendingWritesChanged();
+        }
+    }
+
+    /**
+     * Applies the pending inserts and deletes to loaded plants sorted by creation time: the
+     * removed plants are left out and the added ones, the newest of the garden, are appended.
+     * Writes that the loaded plants already reflect are forgotten along the way.
+     *
+     * @param loaded        The plants loaded from the provider
+     * @param hasMorePlants True if the garden has more plants after the loaded ones, in which
+     *                      case the added plants aren't part of the loaded range
+     * @param timeNow       The time to evaluate the added plants at
+     * @return The plants to display, which is loaded itself if no pending write applies
+     */
+    public static PlantSnapshot applyPendingWrites(PlantSnapshot loaded, boolean hasMorePlants,
+                                                   long timeNow) {
+        for (int i = sPendingInserts.size() - 1; i >= 0; i--) {
+            long plantId = sPendingInserts.get(i).mPlantId;
+            if (plantId != PlantContract.INVALID_PLANT_ID
+                    && (hasMorePlants || indexOf(loaded, plantId) >= 0)) {
+                sPendingInserts.remove(i);
+            }
+        }
+        for (int i = sPendingDeletes.size() - 1; i >= 0; i--) {
+            if (sPendingDeletes.valueAt(i) && indexOf(loaded, sPendingDeletes.keyAt(i)) < 0) {
+                sPendingDeletes.removeAt(i);
+            }
+        }
+
+        ArrayList<PendingInsert> inserts = new ArrayList<>();
+        if (!hasMorePlants) {
+            for (PendingInsert insert : sPendingInserts) {
+                // A plant may be deleted again before the garden reflects its insert
+                if (sPendingDeletes.get(insert.getDisplayedId()) == null) inserts.add(insert);
+            }
+        }
+        int deleteCount = 0;
+        for (int i = 0; i < sPendingDeletes.size(); i++) {
+            if (indexOf(loaded, sPendingDeletes.keyAt(i)) >= 0) deleteCount++;
+        }
+        if (inserts.isEmpty() && deleteCount == 0) return loaded;
+
+        int size = loaded.size() - deleteCount + inserts.size();
+        long[] ids = new long[size];
+        int[] types = new int[size];
+        long[] createdAt = new long[size];
+        long[] wateredAt = new long[size];
+        int position = 0;
+        for (int i = 0; i < loaded.size(); i++) {
+            if (sPendingDeletes.get(loaded.getId(i)) != null) continue;
+            ids[position] = loaded.getId(i);
+            types[position] = loaded.getType(i);
+            createdAt[position] = loaded.getCreatedAt(i);
+            wateredAt[position] = loaded.getWateredAt(i);
+            position++;
+        }
+        for (PendingInsert insert : inserts) {
+            ids[position] = insert.getDisplayedId();
+            types[position] = insert.mPlantType;
+            createdAt[position] = insert.mTime;
+            wateredAt[position] = insert.mTime;
+            position++;
+        }
+        return PlantSnapshot.of(ids, types, createdAt, wateredAt, timeNow);
+    }
+
+    private static int indexOf(PlantSnapshot plants, long plantId) {
+        for (int i = 0; i < plants.size(); i++) {
+            if (plants.getId(i) == plantId) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Queues a write to the plants provider
+     *
+     * @param context   The calling context
+     * @param operation The write to apply
+     * @param listener  Told about the result on the main thread, or null
+     */
+    public static void enqueue(Context context, ContentProviderOperation operation,
+                               @Nullable OnWriteCompleteListener listener) {
+        boolean drainScheduled;
+        synchronized (sLock) {
+            // A drain is already scheduled if there were pending writes
+            drainScheduled = !sPendingOperations.isEmpty();
+            sPendingOperations.add(operation);
+            sPendingListeners.add(listener);
+        }
+        if (drainScheduled) return;
+
+        final Context appContext = context.getApplicationContext();
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                drain(appContext);
+            }
+        });
+    }
+
+    /**
+     * Applies all pending writes in a single batch. If the batch fails, its writes are
+     * applied one by one, so a single bad write doesn't fail the others.
+     */
+    private static void drain(Context context) {
+        ArrayList<ContentProviderOperation> operations;
+        ArrayList<OnWriteCompleteListener> listeners;
+        synchronized (sLock) {
+            operations = sPendingOperations;
+            listeners = sPendingListeners;
+            sPendingOperations = new ArrayList<>();
+            sPendingListeners = new ArrayList<>();
+        }
+        if (operations.isEmpty()) return;
+
+        ContentProviderResult[] results = null;
+        try {
+            results = applyBatch(context, operations);
+            if (results == null && operations.size() > 1) {
+                results = new ContentProviderResult[operations.size()];
+                ArrayList<ContentProviderOperation> single = new ArrayList<>(1);
+                for (int i = 0; i < operations.size(); i++) {
+                    single.clear();
+                    single.add(operations.get(i));
+                    ContentProviderResult[] singleResult = applyBatch(context, single);
+                    results[i] = singleResult == null ? null : singleResult[0];
+                }
+            }
+
+            // Widgets show the garden too, update them once for the whole batch
+            PlantWateringService.startActionUpdatePlantWidgets(context);
+        } finally {
+            // Callers always hear back, even if something above threw
+            deliverResults(listeners, results);
+        }
+    }
+
+    @Nullable
+    private static ContentProviderResult[] applyBatch(Context context,
+                                                      ArrayList<ContentProviderOperation> operations) {
+        try {
+            return context.getContentResolver().applyBatch(PlantContract.AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException | RuntimeException e) {
+            // Providers report failed writes with any RuntimeException, e.g. SQLException
+            Log.e(TAG, "Failed to apply " + operations.size() + " writes", e);
+            return null;
+        }
+    }
+
+    private static void deliverResults(final ArrayList<OnWriteCompleteListener> listeners,
+                                       @Nullable final ContentProviderResult[] results) {
+        sHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < listeners.size(); i++) {
+                    OnWriteCompleteListener listener = listeners.get(i);
+                    if (listener != null) {
+                        listener.onWriteComplete(results == null ? null : results[i]);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * A plant added by insertPlant
+     */
+    private static class PendingInsert {
+        // The negative ID the plant is displayed with until it's written
+        final long mPendingId;
+        final int mPlantType;
+        final long mTime;
+        // The database ID of the plant once it's written
+        long mPlantId = PlantContract.INVALID_PLANT_ID;
+
+        PendingInsert(long pendingId, int plantType, long time) {
+            mPendingId = pendingId;
+            mPlantType = plantType;
+            mTime = time;
+        }
+
+        long getDisplayedId() {
+            return mPlantId != PlantContract.INVALID_PLANT_ID ? mPlantId : mPendingId;
+        }
+    }
+}
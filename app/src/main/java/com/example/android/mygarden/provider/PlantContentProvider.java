@@ -17,18 +17,32 @@ package com.example.android.mygarden.provider;
 */
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.util.SparseArray;
+
+import com.example.android.mygarden.utils.PlantLifecycle;
+import com.example.android.mygarden.utils.PlantMetrics;
+import com.example.android.mygarden.utils.PlantUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
+import static com.example.android.mygarden.provider.PlantContract.PlantCountEntry;
 import static com.example.android.mygarden.provider.PlantContract.PlantEntry;
 
 
@@ -39,6 +53,9 @@ public class PlantContentProvider extends ContentProvider {
     // and related ints (101, 102, ..) for items in that directory.
     public static final int PLANTS = 100;
     public static final int PLANT_WITH_ID = 101;
+    public static final int PLANT_THIRSTIEST = 102;
+    public static final int PLANT_PAGE = 103;
+    public static final int PLANT_SUMMARY = 104;
 
     // Declare a static variable for the Uri matcher that you construct
     private static final UriMatcher sUriMatcher = buildUriMatcher();
@@ -51,12 +68,42 @@ public class PlantContentProvider extends ContentProvider {
         // Add URI matches
         uriMatcher.addURI(PlantContract.AUTHORITY, PlantContract.PATH_PLANTS, PLANTS);
         uriMatcher.addURI(PlantContract.AUTHORITY, PlantContract.PATH_PLANTS + "/#", PLANT_WITH_ID);
+        uriMatcher.addURI(PlantContract.AUTHORITY,
+                PlantContract.PATH_PLANTS + "/" + PlantContract.PATH_THIRSTIEST, PLANT_THIRSTIEST);
+        uriMatcher.addURI(PlantContract.AUTHORITY,
+                PlantContract.PATH_PLANTS + "/" + PlantContract.PATH_PAGE, PLANT_PAGE);
+        uriMatcher.addURI(PlantContract.AUTHORITY,
+                PlantContract.PATH_PLANTS + "/" + PlantContract.PATH_SUMMARY, PLANT_SUMMARY);
         return uriMatcher;
     }
 
+    // Number of plants in a page when the page URI doesn't specify a limit
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    // Columns returned for the thirstiest plant when no projection is given, in the order
+    // putThirstiestPlant reads them
+    private static final String[] THIRSTIEST_PROJECTION = {
+            PlantEntry._ID,
+            PlantEntry.COLUMN_PLANT_TYPE,
+            PlantEntry.COLUMN_CREATION_TIME,
+            PlantEntry.COLUMN_LAST_WATERED_TIME
+    };
+
+    // Columns of the summary, in the order of the counts returned by countStatuses
+    private static final String[] SUMMARY_COLUMNS = {
+            PlantEntry.COLUMN_PLANT_TYPE,
+            PlantEntry.COLUMN_ALIVE_COUNT,
+            PlantEntry.COLUMN_DYING_COUNT,
+            PlantEntry.COLUMN_DEAD_COUNT
+    };
+
     // Member variable for a PlantDbHelper that's initialized in the onCreate() method
     private PlantDbHelper mPlantDbHelper;
 
+    // Collects the URIs changed while applyBatch() is running on the current thread, so that
+    // observers get a single notification once the batch is committed
+    private final ThreadLocal<Set<Uri>> mBatchChanges = new ThreadLocal<>();
+
     @Override
     public boolean onCreate() {
         Context context = getContext();
@@ -73,31 +120,125 @@ public class PlantContentProvider extends ContentProvider {
      */
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues values) {
-        final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
+        long startNanos = PlantMetrics.beginSection("PlantContentProvider.insert");
+        try {
+            final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
 
-        // Write URI matching code to identify the match for the plants directory
-        int match = sUriMatcher.match(uri);
-        Uri returnUri; // URI to be returned
-        switch (match) {
-            case PLANTS:
-                // Insert new values into the database
-                long id = db.insert(PlantEntry.TABLE_NAME, null, values);
-                if (id > 0) {
-                    returnUri = ContentUris.withAppendedId(PlantContract.PlantEntry.CONTENT_URI, id);
-                } else {
-                    throw new android.database.SQLException("Failed to insert row into " + uri);
-                }
-                break;
-            // Default case throws an UnsupportedOperationException
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+            // Write URI matching code to identify the match for the plants directory
+            int match = sUriMatcher.match(uri);
+            Uri returnUri; // URI to be returned
+            switch (match) {
+                case PLANTS:
+                    // Insert new values into the database
+                    long id = db.insert(PlantEntry.TABLE_NAME, null, values);
+                    if (id > 0) {
+                        returnUri = ContentUris.withAppendedId(PlantContract.PlantEntry.CONTENT_URI, id);
+                    } else {
+                        throw new android.database.SQLException("Failed to insert row into " + uri);
+                    }
+                    break;
+                // Default case throws an UnsupportedOperationException
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+
+            // Notify the resolver that the plants directory has a new row, and return the newly
+            // inserted URI
+            notifyChange(PlantEntry.CONTENT_URI);
+
+            // Return constructed uri (this points to the newly inserted row of data)
+            return returnUri;
+        } finally {
+            PlantMetrics.endSection("PlantContentProvider.insert", startNanos);
         }
+    }
 
-        // Notify the resolver if the uri has been changed, and return the newly inserted URI
-        getContext().getContentResolver().notifyChange(uri, null);
+    /***
+     * Handles requests to insert a set of new rows. All rows are inserted in a single
+     * transaction and observers are notified once, after the transaction is committed.
+     * If any row fails to insert, none of them are.
+     *
+     * @param uri
+     * @param values
+     * @return number of rows inserted
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        long startNanos = PlantMetrics.beginSection("PlantContentProvider.bulkInsert");
+        try {
+            final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
+
+            int match = sUriMatcher.match(uri);
+            int plantsInserted = 0;
+            switch (match) {
+                case PLANTS:
+                    db.beginTransaction();
+                    try {
+                        for (ContentValues value : values) {
+                            long id = db.insert(PlantEntry.TABLE_NAME, null, value);
+                            if (id <= 0) {
+                                throw new android.database.SQLException("Failed to insert row into " + uri);
+                            }
+                            plantsInserted++;
+                        }
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
 
-        // Return constructed uri (this points to the newly inserted row of data)
-        return returnUri;
+            if (plantsInserted != 0) {
+                notifyChange(PlantEntry.CONTENT_URI);
+            }
+            return plantsInserted;
+        } finally {
+            PlantMetrics.endSection("PlantContentProvider.bulkInsert", startNanos);
+        }
+    }
+
+    /***
+     * Applies a batch of operations in a single transaction. Either all operations are
+     * applied or none of them are, and observers get a single notification at the end
+     * instead of one per operation: on the row's URI if only one plant was updated, otherwise
+     * on the plants directory URI.
+     *
+     * @param operations
+     * @return the results of the applied operations
+     * @throws OperationApplicationException
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long startNanos = PlantMetrics.beginSection("PlantContentProvider.applyBatch");
+        try {
+            final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
+            ContentProviderResult[] results;
+            Set<Uri> changes = new HashSet<>();
+
+            db.beginTransaction();
+            mBatchChanges.set(changes);
+            try {
+                results = super.applyBatch(operations);
+                db.setTransactionSuccessful();
+            } finally {
+                mBatchChanges.remove();
+                db.endTransaction();
+            }
+
+            if (changes.size() == 1) {
+                // A single changed row, or only changes to the plants directory
+                notifyChange(changes.iterator().next());
+            } else if (!changes.isEmpty()) {
+                notifyChange(PlantEntry.CONTENT_URI);
+            }
+            return results;
+        } finally {
+            PlantMetrics.endSection("PlantContentProvider.applyBatch", startNanos);
+        }
     }
 
     /***
@@ -113,45 +254,145 @@ public class PlantContentProvider extends ContentProvider {
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection,
                         String[] selectionArgs, String sortOrder) {
+        long startNanos = PlantMetrics.beginSection("PlantContentProvider.query");
+        try {
+            // Get access to underlying database (read-only for query)
+            final SQLiteDatabase db = mPlantDbHelper.getReadableDatabase();
 
-        // Get access to underlying database (read-only for query)
-        final SQLiteDatabase db = mPlantDbHelper.getReadableDatabase();
-
-        // Write URI match code and set a variable to return a Cursor
-        int match = sUriMatcher.match(uri);
-        Cursor retCursor;
-
-        switch (match) {
-            // Query for the plants directory
-            case PLANTS:
-                retCursor = db.query(PlantEntry.TABLE_NAME,
-                        projection,
-                        selection,
-                        selectionArgs,
-                        null,
-                        null,
-                        sortOrder);
-                break;
-            case PLANT_WITH_ID:
-                String id = uri.getPathSegments().get(1);
-                retCursor = db.query(PlantEntry.TABLE_NAME,
-                        projection,
-                        "_id=?",
-                        new String[]{id},
-                        null,
-                        null,
-                        sortOrder);
-                break;
-            // Default exception
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+            // Write URI match code and set a variable to return a Cursor
+            int match = sUriMatcher.match(uri);
+            Cursor retCursor;
+
+            switch (match) {
+                // Query for the plants directory
+                case PLANTS:
+                    retCursor = db.query(PlantEntry.TABLE_NAME,
+                            projection,
+                            selection,
+                            selectionArgs,
+                            null,
+                            null,
+                            sortOrder);
+                    break;
+                case PLANT_WITH_ID:
+                    String id = uri.getPathSegments().get(1);
+                    retCursor = db.query(PlantEntry.TABLE_NAME,
+                            projection,
+                            "_id=?",
+                            new String[]{id},
+                            null,
+                            null,
+                            sortOrder);
+                    break;
+                case PLANT_THIRSTIEST:
+                    // The plant that was watered the longest time ago. Served straight from the
+                    // lastWateredAt index, so the cost doesn't grow with the size of the garden
+                    retCursor = db.query(PlantEntry.TABLE_NAME,
+                            projection != null ? projection : THIRSTIEST_PROJECTION,
+                            selection,
+                            selectionArgs,
+                            null,
+                            null,
+                            PlantEntry.COLUMN_LAST_WATERED_TIME,
+                            "1");
+                    // Watering or removing any plant may change which one is the thirstiest
+                    uri = PlantEntry.CONTENT_URI;
+                    break;
+                case PLANT_PAGE:
+                    retCursor = queryPage(db, uri, projection, selection, selectionArgs);
+                    // Pages are keyed on the rows of the previous page, so any change in the
+                    // plants directory may affect them
+                    uri = PlantEntry.CONTENT_URI;
+                    break;
+                case PLANT_SUMMARY:
+                    // Always the SUMMARY_COLUMNS of every plant type, the projection,
+                    // selection and sort order are ignored
+                    retCursor = querySummary();
+                    uri = PlantEntry.CONTENT_URI;
+                    break;
+                // Default exception
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+
+            // SQLite only runs the query once the cursor is first read, do it here so that
+            // it's part of the section
+            retCursor.getCount();
+
+            // Set a notification URI on the Cursor and return that Cursor
+            retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+
+            // Return the desired Cursor
+            return retCursor;
+        } finally {
+            PlantMetrics.endSection("PlantContentProvider.query", startNanos);
+        }
+    }
+
+    /***
+     * Queries a single page of plants sorted by the page URI's order column, then by ID.
+     * Pages use keyset pagination: a page starts right after the (afterKey, afterId) position
+     * of the last plant of the previous page, so SQLite seeks straight to it through the
+     * column's index instead of skipping over all of the previous pages.
+     *
+     * @param db
+     * @param uri
+     * @param projection
+     * @param selection
+     * @param selectionArgs
+     * @return The Cursor for the page
+     */
+    private static Cursor queryPage(SQLiteDatabase db, Uri uri, String[] projection,
+                                    String selection, String[] selectionArgs) {
+        String orderColumn = uri.getQueryParameter(PlantContract.PARAM_ORDER_BY);
+        if (orderColumn == null) orderColumn = PlantEntry.COLUMN_CREATION_TIME;
+        // Only indexed columns can be paged through efficiently
+        if (!orderColumn.equals(PlantEntry.COLUMN_CREATION_TIME)
+                && !orderColumn.equals(PlantEntry.COLUMN_LAST_WATERED_TIME)) {
+            throw new IllegalArgumentException("Unsupported page order: " + uri);
         }
 
-        // Set a notification URI on the Cursor and return that Cursor
-        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+        int limit = DEFAULT_PAGE_SIZE;
+        String afterKey = uri.getQueryParameter(PlantContract.PARAM_AFTER_KEY);
+        String afterId = uri.getQueryParameter(PlantContract.PARAM_AFTER_ID);
+        try {
+            String limitParam = uri.getQueryParameter(PlantContract.PARAM_LIMIT);
+            if (limitParam != null) limit = Integer.parseInt(limitParam);
+            // The position of the previous page needs both its key and ID
+            if (afterKey != null || afterId != null) {
+                Long.parseLong(afterKey);
+                Long.parseLong(afterId);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page uri: " + uri, e);
+        }
 
-        // Return the desired Cursor
-        return retCursor;
+        if (afterKey != null) {
+            // (orderColumn, _id) > (afterKey, afterId), written so that the leading range on
+            // orderColumn can be answered from its index
+            String pageSelection = orderColumn + ">=? AND (" +
+                    orderColumn + ">? OR " + PlantEntry._ID + ">?)";
+            String[] pageArgs = new String[]{afterKey, afterKey, afterId};
+            if (selection == null) {
+                selection = pageSelection;
+                selectionArgs = pageArgs;
+            } else {
+                selection = "(" + selection + ") AND " + pageSelection;
+                ArrayList<String> selectionArgsList = new ArrayList<String>();
+                if (selectionArgs != null) selectionArgsList.addAll(Arrays.asList(selectionArgs));
+                selectionArgsList.addAll(Arrays.asList(pageArgs));
+                selectionArgs = selectionArgsList.toArray(new String[selectionArgsList.size()]);
+            }
+        }
+
+        return db.query(PlantEntry.TABLE_NAME,
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                orderColumn + ", " + PlantEntry._ID,
+                String.valueOf(limit));
     }
 
     /***
@@ -164,29 +405,34 @@ public class PlantContentProvider extends ContentProvider {
      */
     @Override
     public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
-        // Get access to the database and write URI matching code to recognize a single item
-        final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
-        int match = sUriMatcher.match(uri);
-        // Keep track of the number of deleted plants
-        int plantsDeleted; // starts as 0
-        switch (match) {
-            // Handle the single item case, recognized by the ID included in the URI path
-            case PLANT_WITH_ID:
-                // Get the plant ID from the URI path
-                String id = uri.getPathSegments().get(1);
-                // Use selections/selectionArgs to filter for this ID
-                plantsDeleted = db.delete(PlantEntry.TABLE_NAME, "_id=?", new String[]{id});
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
-        }
-        // Notify the resolver of a change and return the number of items deleted
-        if (plantsDeleted != 0) {
-            // A plant (or more) was deleted, set notification
-            getContext().getContentResolver().notifyChange(uri, null);
+        long startNanos = PlantMetrics.beginSection("PlantContentProvider.delete");
+        try {
+            // Get access to the database and write URI matching code to recognize a single item
+            final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
+            int match = sUriMatcher.match(uri);
+            // Keep track of the number of deleted plants
+            int plantsDeleted; // starts as 0
+            switch (match) {
+                // Handle the single item case, recognized by the ID included in the URI path
+                case PLANT_WITH_ID:
+                    // Get the plant ID from the URI path
+                    String id = uri.getPathSegments().get(1);
+                    // Use selections/selectionArgs to filter for this ID
+                    plantsDeleted = db.delete(PlantEntry.TABLE_NAME, "_id=?", new String[]{id});
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            // Notify the resolver of a change and return the number of items deleted
+            if (plantsDeleted != 0) {
+                // A plant (or more) was deleted, which changes the plants directory
+                notifyChange(PlantEntry.CONTENT_URI);
+            }
+            // Return the number of plant deleted
+            return plantsDeleted;
+        } finally {
+            PlantMetrics.endSection("PlantContentProvider.delete", startNanos);
         }
-        // Return the number of plant deleted
-        return plantsDeleted;
     }
 
     /***
@@ -200,45 +446,411 @@ public class PlantContentProvider extends ContentProvider {
     @Override
     public int update(@NonNull Uri uri, ContentValues values, String selection,
                       String[] selectionArgs) {
-        // Get access to underlying database
-        final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
-        int match = sUriMatcher.match(uri);
-        // Keep track of the number of updated plants
-        int plantsUpdated;
-
-        switch (match) {
-            case PLANTS:
-                plantsUpdated = db.update(PlantEntry.TABLE_NAME, values, selection, selectionArgs);
-                break;
-            case PLANT_WITH_ID:
-                if (selection == null) selection = PlantEntry._ID + "=?";
-                else selection += " AND " + PlantEntry._ID + "=?";
-                // Get the place ID from the URI path
-                String id = uri.getPathSegments().get(1);
-                // Append any existing selection options to the ID filter
-                if (selectionArgs == null) selectionArgs = new String[]{id};
-                else {
-                    ArrayList<String> selectionArgsList = new ArrayList<String>();
-                    selectionArgsList.addAll(Arrays.asList(selectionArgs));
-                    selectionArgsList.add(id);
-                    selectionArgs = selectionArgsList.toArray(new String[selectionArgsList.size()]);
+        long startNanos = PlantMetrics.beginSection("PlantContentProvider.update");
+        try {
+            // Get access to underlying database
+            final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
+            int match = sUriMatcher.match(uri);
+            // Keep track of the number of updated plants
+            int plantsUpdated;
+            // The URI observers are notified on
+            Uri changedUri;
+
+            switch (match) {
+                case PLANTS:
+                    db.beginTransaction();
+                    try {
+                        changedUri = getChangedUri(db, selection, selectionArgs);
+                        plantsUpdated = db.update(PlantEntry.TABLE_NAME, values, selection, selectionArgs);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                    break;
+                case PLANT_WITH_ID:
+                    if (selection == null) selection = PlantEntry._ID + "=?";
+                    else selection += " AND " + PlantEntry._ID + "=?";
+                    // Get the place ID from the URI path
+                    String id = uri.getPathSegments().get(1);
+                    // Append any existing selection options to the ID filter
+                    if (selectionArgs == null) selectionArgs = new String[]{id};
+                    else {
+                        ArrayList<String> selectionArgsList = new ArrayList<String>();
+                        selectionArgsList.addAll(Arrays.asList(selectionArgs));
+                        selectionArgsList.add(id);
+                        selectionArgs = selectionArgsList.toArray(new String[selectionArgsList.size()]);
+                    }
+                    plantsUpdated = db.update(PlantEntry.TABLE_NAME, values, selection, selectionArgs);
+                    changedUri = ContentUris.withAppendedId(PlantEntry.CONTENT_URI, Long.parseLong(id));
+                    break;
+                // Default exception
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+
+            // Notify the resolver of a change and return the number of items updated
+            if (plantsUpdated != 0) {
+                // A place (or more) was updated, set notification
+                notifyChange(changedUri);
+            }
+            // Return the number of places deleted
+            return plantsUpdated;
+        } finally {
+            PlantMetrics.endSection("PlantContentProvider.update", startNanos);
+        }
+    }
+
+
+    /***
+     * Returns the URI to notify for a change to the plants matching the given selection:
+     * the row's URI if a single plant matches, otherwise the plants directory URI.
+     * Observers of other single plants then don't need to query again.
+     *
+     * @param db
+     * @param selection
+     * @param selectionArgs
+     * @return The URI to notify
+     */
+    private static Uri getChangedUri(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        // Two rows are enough to tell a single plant from many
+        Cursor cursor = db.query(PlantEntry.TABLE_NAME, new String[]{PlantEntry._ID},
+                selection, selectionArgs, null, null, null, "2");
+        try {
+            if (cursor.getCount() == 1 && cursor.moveToFirst()) {
+                return ContentUris.withAppendedId(PlantEntry.CONTENT_URI, cursor.getLong(0));
+            }
+            return PlantEntry.CONTENT_URI;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /***
+     * Notifies observers of a change to the given uri, unless a batch is being applied on
+     * this thread, in which case applyBatch() sends a single notification when it is done.
+     * <p>
+     * Inserts and deletes notify the plants directory URI, since they change which plants
+     * there are. An update of a single plant notifies that plant's row URI, so observers of
+     * the directory that get the changed URI can reload only that plant.
+     *
+     * @param uri
+     */
+    private void notifyChange(Uri uri) {
+        Set<Uri> batchChanges = mBatchChanges.get();
+        if (batchChanges != null) {
+            batchChanges.add(uri);
+            return;
+        }
+        PlantMetrics.increment("PlantContentProvider.notifications", 1);
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    /***
+     * Handles the provider's call() methods, which return their results as a Bundle in a
+     * single round-trip instead of a Cursor
+     *
+     * @param method
+     * @param arg
+     * @param extras
+     * @return The result of the method, or null for unknown methods
+     */
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        switch (method) {
+            case PlantContract.METHOD_WATER_PLANT:
+            case PlantContract.METHOD_WATER_ALL:
+            case PlantContract.METHOD_COUNT_BY_STATUS:
+            case PlantContract.METHOD_GET_THIRSTIEST:
+            case PlantContract.METHOD_ADVANCE_COUNTS:
+                String section = "PlantContentProvider." + method;
+                long startNanos = PlantMetrics.beginSection(section);
+                try {
+                    return callPlantMethod(method, arg);
+                } finally {
+                    PlantMetrics.endSection(section, startNanos);
+                }
+            case PlantContract.METHOD_METRICS:
+                return PlantMetrics.toBundle();
+            default:
+                return super.call(method, arg, extras);
+        }
+    }
+
+    private Bundle callPlantMethod(String method, String arg) {
+        switch (method) {
+            case PlantContract.METHOD_WATER_PLANT:
+                return waterPlant(parsePlantId(method, arg));
+            case PlantContract.METHOD_WATER_ALL:
+                return waterAll();
+            case PlantContract.METHOD_COUNT_BY_STATUS:
+                return countByStatus();
+            case PlantContract.METHOD_GET_THIRSTIEST:
+                Bundle result = new Bundle();
+                putThirstiestPlant(mPlantDbHelper.getReadableDatabase(), result);
+                return result;
+            case PlantContract.METHOD_ADVANCE_COUNTS:
+                final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    advanceCounts(db, currentTimeMillis());
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
                 }
-                plantsUpdated = db.update(PlantEntry.TABLE_NAME, values, selection, selectionArgs);
-                break;
-            // Default exception
+                return new Bundle();
             default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+                throw new IllegalArgumentException("Unknown method: " + method);
+        }
+    }
+
+    /***
+     * Parses the plant ID passed as the arg of a call() method
+     *
+     * @throws IllegalArgumentException If the arg is missing or isn't a plant ID
+     */
+    private static long parsePlantId(String method, String arg) {
+        try {
+            if (arg != null) return Long.parseLong(arg);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(method + " needs a plant id", e);
+        }
+        throw new IllegalArgumentException(method + " needs a plant id");
+    }
+
+    /***
+     * Waters a single plant if it's still alive and finds the plant that is the thirstiest
+     * afterwards, both in the same transaction
+     *
+     * @param plantId The plant to water
+     * @return KEY_WATERED_COUNT and the thirstiest plant
+     */
+    private Bundle waterPlant(long plantId) {
+        long timeNow = currentTimeMillis();
+        // Update only if that plant is still alive
+        Bundle result = water(timeNow,
+                PlantEntry._ID + "=? AND " + PlantEntry.COLUMN_LAST_WATERED_TIME + ">?",
+                new String[]{String.valueOf(plantId),
+                        String.valueOf(timeNow - PlantUtils.MAX_AGE_WITHOUT_WATER)});
+        if (result.getInt(PlantContract.KEY_WATERED_COUNT) != 0) {
+            notifyChange(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId));
+        }
+        return result;
+    }
+
+    /***
+     * Waters every plant that is still alive and hasn't been watered for at least
+     * MIN_AGE_BETWEEN_WATER with a single statement, and finds the plant that is the
+     * thirstiest afterwards, both in the same transaction
+     *
+     * @return KEY_WATERED_COUNT and the thirstiest plant
+     */
+    private Bundle waterAll() {
+        long timeNow = currentTimeMillis();
+        Bundle result = water(timeNow,
+                PlantEntry.COLUMN_LAST_WATERED_TIME + ">? AND " +
+                        PlantEntry.COLUMN_LAST_WATERED_TIME + "<?",
+                new String[]{String.valueOf(timeNow - PlantUtils.MAX_AGE_WITHOUT_WATER),
+                        String.valueOf(timeNow - PlantUtils.MIN_AGE_BETWEEN_WATER)});
+        if (result.getInt(PlantContract.KEY_WATERED_COUNT) != 0) {
+            notifyChange(PlantEntry.CONTENT_URI);
         }
+        return result;
+    }
 
-        // Notify the resolver of a change and return the number of items updated
-        if (plantsUpdated != 0) {
-            // A place (or more) was updated, set notification
-            getContext().getContentResolver().notifyChange(uri, null);
+    /***
+     * Sets the last watering time of the selected plants to timeNow and finds the plant that
+     * is the thirstiest afterwards, both in the same transaction. Observers aren't notified.
+     *
+     * @return KEY_WATERED_COUNT and the thirstiest plant
+     */
+    private Bundle water(long timeNow, String selection, String[] selectionArgs) {
+        final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, timeNow);
+
+        Bundle result = new Bundle();
+        int plantsWatered;
+        db.beginTransaction();
+        try {
+            plantsWatered = db.update(PlantEntry.TABLE_NAME, values, selection, selectionArgs);
+            putThirstiestPlant(db, result);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
-        // Return the number of places deleted
-        return plantsUpdated;
+        result.putInt(PlantContract.KEY_WATERED_COUNT, plantsWatered);
+        return result;
     }
 
+    /***
+     * Counts the plants of each status, from the plant counts
+     *
+     * @return KEY_ALIVE_COUNT, KEY_DYING_COUNT and KEY_DEAD_COUNT
+     */
+    private Bundle countByStatus() {
+        SparseArray<int[]> counts = countStatuses(currentTimeMillis());
+        int[] total = new int[SUMMARY_COLUMNS.length - 1];
+        for (int i = 0; i < counts.size(); i++) {
+            int[] typeCounts = counts.valueAt(i);
+            for (int status = 0; status < total.length; status++) {
+                total[status] += typeCounts[status];
+            }
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(PlantContract.KEY_ALIVE_COUNT, total[PlantLifecycle.STATUS_ALIVE]);
+        result.putInt(PlantContract.KEY_DYING_COUNT, total[PlantLifecycle.STATUS_DYING]);
+        result.putInt(PlantContract.KEY_DEAD_COUNT, total[PlantLifecycle.STATUS_DEAD]);
+        return result;
+    }
+
+    /***
+     * Returns the number of plants of each type and status, one row per type that has plants
+     */
+    private Cursor querySummary() {
+        SparseArray<int[]> counts = countStatuses(currentTimeMillis());
+        MatrixCursor cursor = new MatrixCursor(SUMMARY_COLUMNS, counts.size());
+        for (int i = 0; i < counts.size(); i++) {
+            int[] typeCounts = counts.valueAt(i);
+            int alive = typeCounts[PlantLifecycle.STATUS_ALIVE];
+            int dying = typeCounts[PlantLifecycle.STATUS_DYING];
+            int dead = typeCounts[PlantLifecycle.STATUS_DEAD];
+            if (alive + dying + dead == 0) continue;
+            cursor.addRow(new Object[]{counts.keyAt(i), alive, dying, dead});
+        }
+        return cursor;
+    }
+
+    /***
+     * Counts the plants of each type and status from the plant counts. The counts are first
+     * moved to timeNow with advanceCounts, in the same transaction, so reading them costs the
+     * plants that changed status since they were last moved, plus one row per type and status.
+     *
+     * @param timeNow The time to evaluate the statuses at
+     * @return The counts of each plant type, indexed by status and keyed by plant type
+     */
+    private SparseArray<int[]> countStatuses(long timeNow) {
+        final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
+        SparseArray<int[]> counts = new SparseArray<>();
+        db.beginTransaction();
+        try {
+            advanceCounts(db, timeNow);
+            Cursor cursor = db.query(PlantCountEntry.TABLE_NAME,
+                    new String[]{PlantCountEntry.COLUMN_PLANT_TYPE, PlantCountEntry.COLUMN_STATUS,
+                            PlantCountEntry.COLUMN_COUNT},
+                    null, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    getTypeCounts(counts, cursor.getInt(0))[cursor.getInt(1)] = cursor.getInt(2);
+                }
+            } finally {
+                cursor.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return counts;
+    }
+
+    /***
+     * Moves the plant counts from the statuses the plants had at the counted-at time to their
+     * statuses at timeNow. Only the plants that crossed DANGER_AGE_WITHOUT_WATER or
+     * MAX_AGE_WITHOUT_WATER in between are read, as two ranges of the lastWateredAt index.
+     * Must be called in a transaction.
+     */
+    private static void advanceCounts(SQLiteDatabase db, long timeNow) {
+        long countedAt = DatabaseUtils.longForQuery(db,
+                "SELECT " + PlantCountEntry.COLUMN_COUNTED_AT +
+                        " FROM " + PlantCountEntry.TIME_TABLE_NAME, null);
+        if (countedAt == timeNow) return;
+
+        moveCounts(db, countedAt, timeNow, PlantLifecycle.DANGER_AGE_WITHOUT_WATER,
+                PlantLifecycle.STATUS_ALIVE, PlantLifecycle.STATUS_DYING);
+        moveCounts(db, countedAt, timeNow, PlantLifecycle.MAX_AGE_WITHOUT_WATER,
+                PlantLifecycle.STATUS_DYING, PlantLifecycle.STATUS_DEAD);
+        ContentValues values = new ContentValues();
+        values.put(PlantCountEntry.COLUMN_COUNTED_AT, timeNow);
+        db.update(PlantCountEntry.TIME_TABLE_NAME, values, null, null);
+    }
+
+    /***
+     * Moves the counts of the plants that crossed a status threshold between two times from
+     * the status before the threshold to the status after it, or back if time went backwards
+     *
+     * @param threshold The time since the last watering at which plants go from fromStatus
+     *                  to toStatus
+     */
+    private static void moveCounts(SQLiteDatabase db, long countedAt, long timeNow,
+                                   long threshold, int fromStatus, int toStatus) {
+        if (timeNow < countedAt) {
+            moveCounts(db, timeNow, countedAt, threshold, toStatus, fromStatus);
+            return;
+        }
+        // Plants watered in [countedAt - threshold, timeNow - threshold) crossed it in between
+        Cursor cursor = db.query(PlantEntry.TABLE_NAME,
+                new String[]{PlantEntry.COLUMN_PLANT_TYPE, "COUNT(*)"},
+                PlantEntry.COLUMN_LAST_WATERED_TIME + ">=? AND " +
+                        PlantEntry.COLUMN_LAST_WATERED_TIME + "<?",
+                new String[]{String.valueOf(countedAt - threshold),
+                        String.valueOf(timeNow - threshold)},
+                PlantEntry.COLUMN_PLANT_TYPE, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                long type = cursor.getLong(0);
+                long moved = cursor.getLong(1);
+                addToCount(db, type, fromStatus, -moved);
+                addToCount(db, type, toStatus, moved);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void addToCount(SQLiteDatabase db, long type, int status, long delta) {
+        Object[] key = {type, status};
+        db.execSQL("INSERT OR IGNORE INTO " + PlantCountEntry.TABLE_NAME +
+                " VALUES (?, ?, 0)", key);
+        db.execSQL("UPDATE " + PlantCountEntry.TABLE_NAME +
+                " SET " + PlantCountEntry.COLUMN_COUNT + " = " + PlantCountEntry.COLUMN_COUNT + " + ?" +
+                " WHERE " + PlantCountEntry.COLUMN_PLANT_TYPE + " = ?" +
+                " AND " + PlantCountEntry.COLUMN_STATUS + " = ?", new Object[]{delta, type, status});
+    }
+
+    private static int[] getTypeCounts(SparseArray<int[]> counts, int type) {
+        int[] typeCounts = counts.get(type);
+        if (typeCounts == null) {
+            typeCounts = new int[SUMMARY_COLUMNS.length - 1];
+            counts.put(type, typeCounts);
+        }
+        return typeCounts;
+    }
+
+    /***
+     * Puts the plant that was watered the longest time ago into the bundle, if there is one
+     */
+    private static void putThirstiestPlant(SQLiteDatabase db, Bundle bundle) {
+        Cursor cursor = db.query(PlantEntry.TABLE_NAME, THIRSTIEST_PROJECTION,
+                null, null, null, null, PlantEntry.COLUMN_LAST_WATERED_TIME, "1");
+        try {
+            if (cursor.moveToFirst()) {
+                bundle.putLong(PlantContract.KEY_PLANT_ID, cursor.getLong(0));
+                bundle.putInt(PlantContract.KEY_PLANT_TYPE, cursor.getInt(1));
+                bundle.putLong(PlantContract.KEY_CREATION_TIME, cursor.getLong(2));
+                bundle.putLong(PlantContract.KEY_LAST_WATERED_TIME, cursor.getLong(3));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /***
+     * Returns the time that waterings and plant statuses are evaluated at. Tests override it
+     * to move the garden through time.
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
 
     @Override
     public String getType(@NonNull Uri uri) {
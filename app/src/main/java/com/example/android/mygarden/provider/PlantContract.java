@@ -18,6 +18,9 @@ package com.example.android.mygarden.provider;
 
 import android.net.Uri;
 import android.provider.BaseColumns;
+import android.text.TextUtils;
+
+import java.util.List;
 
 public class PlantContract {
 
@@ -30,18 +33,156 @@ public class PlantContract {
     // Define the possible paths for accessing data in this contract
     // This is the path for the "plants" directory
     public static final String PATH_PLANTS = "plants";
+    // This is the path for the single plant most in need of water, under the "plants" directory
+    public static final String PATH_THIRSTIEST = "thirstiest";
+    // This is the path for keyset-paginated pages of plants, under the "plants" directory
+    public static final String PATH_PAGE = "page";
+    // This is the path for the number of plants of each type and status, under the "plants" directory
+    public static final String PATH_SUMMARY = "summary";
+
+    // Query parameters of a page URI: the column the pages are sorted by, the sort key and ID
+    // of the last plant of the previous page (omitted for the first page), and the page size
+    public static final String PARAM_ORDER_BY = "orderBy";
+    public static final String PARAM_AFTER_KEY = "afterKey";
+    public static final String PARAM_AFTER_ID = "afterId";
+    public static final String PARAM_LIMIT = "limit";
 
     public static final long INVALID_PLANT_ID = -1;
 
+    // Methods of the provider's call() interface, which return a Bundle instead of a Cursor.
+    // "waterPlant" waters the plant whose ID is the arg, if it's still alive, and returns
+    // KEY_WATERED_COUNT along with the plant that is the thirstiest afterwards. It throws an
+    // IllegalArgumentException if the arg isn't a plant ID
+    public static final String METHOD_WATER_PLANT = "waterPlant";
+    // "waterAll" waters every plant that is still alive and can be watered again, and returns
+    // KEY_WATERED_COUNT along with the plant that is the thirstiest afterwards
+    public static final String METHOD_WATER_ALL = "waterAll";
+    // "countByStatus" returns the number of plants of each status, as KEY_ALIVE_COUNT,
+    // KEY_DYING_COUNT and KEY_DEAD_COUNT, from the same counters as the summary URI
+    public static final String METHOD_COUNT_BY_STATUS = "countByStatus";
+    // "getThirstiest" returns the plant that was watered the longest time ago
+    public static final String METHOD_GET_THIRSTIEST = "getThirstiest";
+    // "advanceCounts" moves the counters of countByStatus and the summary URI to the current
+    // time, and returns an empty Bundle. Reads do so too, calling it at the plants'
+    // transitions keeps that work small
+    public static final String METHOD_ADVANCE_COUNTS = "advanceCounts";
+    // "metrics" returns the process' counters and latency histograms, one Bundle per metric
+    // with KEY_METRIC_COUNT and, for timed sections, the KEY_METRIC_*_MICROS latencies
+    public static final String METHOD_METRICS = "metrics";
+
+    // Keys of the Bundles returned by call(). A plant is described by its KEY_PLANT_ID,
+    // KEY_PLANT_TYPE, KEY_CREATION_TIME and KEY_LAST_WATERED_TIME; KEY_PLANT_ID is missing
+    // if there is no such plant
+    public static final String KEY_WATERED_COUNT = "wateredCount";
+    public static final String KEY_PLANT_ID = "plantId";
+    public static final String KEY_PLANT_TYPE = "plantType";
+    public static final String KEY_CREATION_TIME = "createdAt";
+    public static final String KEY_LAST_WATERED_TIME = "lastWateredAt";
+    public static final String KEY_ALIVE_COUNT = "aliveCount";
+    public static final String KEY_DYING_COUNT = "dyingCount";
+    public static final String KEY_DEAD_COUNT = "deadCount";
+    public static final String KEY_METRIC_COUNT = "count";
+    public static final String KEY_METRIC_TOTAL_MICROS = "totalMicros";
+    public static final String KEY_METRIC_P50_MICROS = "p50Micros";
+    public static final String KEY_METRIC_P99_MICROS = "p99Micros";
+    public static final String KEY_METRIC_MAX_MICROS = "maxMicros";
+
     public static final class PlantEntry implements BaseColumns {
 
         // TaskEntry content URI = base content URI + path
         public static final Uri CONTENT_URI =
                 BASE_CONTENT_URI.buildUpon().appendPath(PATH_PLANTS).build();
 
+        // Thirstiest plant content URI = plants content URI + path
+        public static final Uri CONTENT_THIRSTIEST_URI =
+                CONTENT_URI.buildUpon().appendPath(PATH_THIRSTIEST).build();
+
+        // Page content URI = plants content URI + path, see buildPageUri
+        public static final Uri CONTENT_PAGE_URI =
+                CONTENT_URI.buildUpon().appendPath(PATH_PAGE).build();
+
+        // Summary content URI = plants content URI + path. Its rows only change when plants
+        // change or as time passes, so clients re-query it when plants transition too.
+        public static final Uri CONTENT_SUMMARY_URI =
+                CONTENT_URI.buildUpon().appendPath(PATH_SUMMARY).build();
+
         public static final String TABLE_NAME = "plants";
         public static final String COLUMN_PLANT_TYPE = "plantType";
         public static final String COLUMN_CREATION_TIME = "createdAt";
         public static final String COLUMN_LAST_WATERED_TIME = "lastWateredAt";
+
+        public static final String INDEX_CREATION_TIME = "plants_createdAt_idx";
+        public static final String INDEX_LAST_WATERED_TIME = "plants_lastWateredAt_idx";
+
+        // Columns of the summary URI, which has one row per plant type along with
+        // COLUMN_PLANT_TYPE
+        public static final String COLUMN_ALIVE_COUNT = "aliveCount";
+        public static final String COLUMN_DYING_COUNT = "dyingCount";
+        public static final String COLUMN_DEAD_COUNT = "deadCount";
+
+        /**
+         * Builds the URI of the first page of plants
+         *
+         * @param orderColumn The column to sort by, either COLUMN_CREATION_TIME or COLUMN_LAST_WATERED_TIME
+         * @param limit       The maximum number of plants in the page
+         * @return The page URI
+         */
+        public static Uri buildPageUri(String orderColumn, int limit) {
+            return CONTENT_PAGE_URI.buildUpon()
+                    .appendQueryParameter(PARAM_ORDER_BY, orderColumn)
+                    .appendQueryParameter(PARAM_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        /**
+         * Builds the URI of the page of plants that follows the given plant
+         *
+         * @param orderColumn The column to sort by, either COLUMN_CREATION_TIME or COLUMN_LAST_WATERED_TIME
+         * @param afterKey    The orderColumn value of the last plant of the previous page
+         * @param afterId     The ID of the last plant of the previous page
+         * @param limit       The maximum number of plants in the page
+         * @return The page URI
+         */
+        public static Uri buildPageUri(String orderColumn, long afterKey, long afterId, int limit) {
+            return buildPageUri(orderColumn, limit).buildUpon()
+                    .appendQueryParameter(PARAM_AFTER_KEY, String.valueOf(afterKey))
+                    .appendQueryParameter(PARAM_AFTER_ID, String.valueOf(afterId))
+                    .build();
+        }
+
+        /**
+         * Returns the ID of the plant a row URI (plants/#) points to
+         *
+         * @param uri A URI of this provider, or null
+         * @return The plant ID, or INVALID_PLANT_ID if uri isn't a plant's row URI
+         */
+        public static long getPlantId(Uri uri) {
+            if (uri == null) return INVALID_PLANT_ID;
+            List<String> segments = uri.getPathSegments();
+            if (segments.size() != 2 || !PATH_PLANTS.equals(segments.get(0))
+                    || !TextUtils.isDigitsOnly(segments.get(1))) {
+                return INVALID_PLANT_ID;
+            }
+            return Long.parseLong(segments.get(1));
+        }
+    }
+
+    /**
+     * The number of plants per type and status, kept up to date by triggers on the plants
+     * table. The statuses are those of the plants at COLUMN_COUNTED_AT, the single row of
+     * TIME_TABLE_NAME; the provider moves the counts of the plants that crossed a status
+     * threshold since then before reading them, and at every transition that
+     * PlantTransitionScheduler wakes the app up for.
+     */
+    public static final class PlantCountEntry {
+
+        public static final String TABLE_NAME = "plant_counts";
+        public static final String COLUMN_PLANT_TYPE = "plantType";
+        // One of the PlantLifecycle STATUS_ values
+        public static final String COLUMN_STATUS = "status";
+        public static final String COLUMN_COUNT = "plantCount";
+
+        public static final String TIME_TABLE_NAME = "plant_counts_time";
+        public static final String COLUMN_COUNTED_AT = "countedAt";
     }
 }
@@ -20,15 +20,23 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.mygarden.provider.PlantContract.PlantCountEntry;
 import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.utils.PlantLifecycle;
 
 public class PlantDbHelper extends SQLiteOpenHelper {
 
     // The database name
-    private static final String DATABASE_NAME = "shushme.db";
+    static final String DATABASE_NAME = "shushme.db";
 
     // If you change the database schema, you must increment the database version
-    private static final int DATABASE_VERSION = 1;
+    // and add a migration step for it to onUpgrade
+    private static final int DATABASE_VERSION = 3;
+
+    // Version 2 added indexes on the watering and creation times
+    private static final int VERSION_TIME_INDEXES = 2;
+    // Version 3 added the trigger-maintained plant counts
+    private static final int VERSION_PLANT_COUNTS = 3;
 
     // Constructor
     public PlantDbHelper(Context context) {
@@ -46,12 +54,113 @@ public class PlantDbHelper extends SQLiteOpenHelper {
                 PlantEntry.COLUMN_LAST_WATERED_TIME + " TIMESTAMP NOT NULL)";
 
         sqLiteDatabase.execSQL(SQL_CREATE_PLANTS_TABLE);
+        createTimeIndexes(sqLiteDatabase);
+        createPlantCounts(sqLiteDatabase, System.currentTimeMillis());
     }
 
     @Override
-    public void onUpgrade(SQLiteDatabase sqLiteDatabase, int i, int i1) {
-        // For now simply drop the table and create a new one.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + PlantEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+    public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        // Migrate one version at a time so the user's garden is kept across upgrades.
+        // SQLiteOpenHelper already runs this inside a transaction.
+        if (oldVersion < VERSION_TIME_INDEXES) {
+            createTimeIndexes(sqLiteDatabase);
+        }
+        if (oldVersion < VERSION_PLANT_COUNTS) {
+            createPlantCounts(sqLiteDatabase, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Creates the indexes used to sort plants by watering time (widget service) and
+     * by creation time (garden list and grid widget)
+     */
+    private static void createTimeIndexes(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL("CREATE INDEX IF NOT EXISTS " + PlantEntry.INDEX_LAST_WATERED_TIME +
+                " ON " + PlantEntry.TABLE_NAME + " (" + PlantEntry.COLUMN_LAST_WATERED_TIME + ")");
+        sqLiteDatabase.execSQL("CREATE INDEX IF NOT EXISTS " + PlantEntry.INDEX_CREATION_TIME +
+                " ON " + PlantEntry.TABLE_NAME + " (" + PlantEntry.COLUMN_CREATION_TIME + ")");
+    }
+
+    /**
+     * Creates the plant counts tables, fills them with the statuses of the existing plants at
+     * countedAt and adds the triggers that keep them up to date as plants are inserted,
+     * watered and deleted
+     */
+    private static void createPlantCounts(SQLiteDatabase sqLiteDatabase, long countedAt) {
+        sqLiteDatabase.execSQL("CREATE TABLE " + PlantCountEntry.TABLE_NAME + " (" +
+                PlantCountEntry.COLUMN_PLANT_TYPE + " INTEGER NOT NULL, " +
+                PlantCountEntry.COLUMN_STATUS + " INTEGER NOT NULL, " +
+                PlantCountEntry.COLUMN_COUNT + " INTEGER NOT NULL, " +
+                "PRIMARY KEY (" + PlantCountEntry.COLUMN_PLANT_TYPE + ", " +
+                PlantCountEntry.COLUMN_STATUS + "))");
+        sqLiteDatabase.execSQL("CREATE TABLE " + PlantCountEntry.TIME_TABLE_NAME + " (" +
+                PlantCountEntry.COLUMN_COUNTED_AT + " INTEGER NOT NULL)");
+
+        sqLiteDatabase.execSQL("INSERT INTO " + PlantCountEntry.TIME_TABLE_NAME +
+                " VALUES (" + countedAt + ")");
+        String status = getStatusAtCountedAt(PlantEntry.COLUMN_LAST_WATERED_TIME);
+        sqLiteDatabase.execSQL("INSERT INTO " + PlantCountEntry.TABLE_NAME +
+                " SELECT " + PlantEntry.COLUMN_PLANT_TYPE + ", " + status + ", COUNT(*)" +
+                " FROM " + PlantEntry.TABLE_NAME +
+                " GROUP BY " + PlantEntry.COLUMN_PLANT_TYPE + ", " + status);
+
+        sqLiteDatabase.execSQL("CREATE TRIGGER plants_count_insert AFTER INSERT ON " +
+                PlantEntry.TABLE_NAME + " BEGIN " +
+                incrementCount() +
+                " END");
+        sqLiteDatabase.execSQL("CREATE TRIGGER plants_count_delete AFTER DELETE ON " +
+                PlantEntry.TABLE_NAME + " BEGIN " +
+                decrementCount() +
+                " END");
+        sqLiteDatabase.execSQL("CREATE TRIGGER plants_count_update AFTER UPDATE OF " +
+                PlantEntry.COLUMN_PLANT_TYPE + ", " + PlantEntry.COLUMN_LAST_WATERED_TIME +
+                " ON " + PlantEntry.TABLE_NAME +
+                " WHEN OLD." + PlantEntry.COLUMN_PLANT_TYPE + " != NEW." + PlantEntry.COLUMN_PLANT_TYPE +
+                " OR " + getStatusAtCountedAt("OLD." + PlantEntry.COLUMN_LAST_WATERED_TIME) +
+                " != " + getStatusAtCountedAt("NEW." + PlantEntry.COLUMN_LAST_WATERED_TIME) +
+                " BEGIN " +
+                decrementCount() + " " +
+                incrementCount() +
+                " END");
+    }
+
+    /**
+     * Returns the SQL expression of the status, at the time the counts are at, of a plant
+     * last watered at wateredAt. Same comparisons as PlantLifecycle.evaluate.
+     */
+    private static String getStatusAtCountedAt(String wateredAt) {
+        String countedAt = "(SELECT " + PlantCountEntry.COLUMN_COUNTED_AT +
+                " FROM " + PlantCountEntry.TIME_TABLE_NAME + ")";
+        return "(CASE WHEN " + wateredAt + " < " + countedAt + " - " +
+                PlantLifecycle.MAX_AGE_WITHOUT_WATER + " THEN " + PlantLifecycle.STATUS_DEAD +
+                " WHEN " + wateredAt + " < " + countedAt + " - " +
+                PlantLifecycle.DANGER_AGE_WITHOUT_WATER + " THEN " + PlantLifecycle.STATUS_DYING +
+                " ELSE " + PlantLifecycle.STATUS_ALIVE + " END)";
+    }
+
+    /**
+     * Returns the trigger statements that count the NEW plant row
+     */
+    private static String incrementCount() {
+        String newType = "NEW." + PlantEntry.COLUMN_PLANT_TYPE;
+        String newStatus = getStatusAtCountedAt("NEW." + PlantEntry.COLUMN_LAST_WATERED_TIME);
+        return "INSERT OR IGNORE INTO " + PlantCountEntry.TABLE_NAME +
+                " VALUES (" + newType + ", " + newStatus + ", 0); " +
+                "UPDATE " + PlantCountEntry.TABLE_NAME +
+                " SET " + PlantCountEntry.COLUMN_COUNT + " = " + PlantCountEntry.COLUMN_COUNT + " + 1" +
+                " WHERE " + PlantCountEntry.COLUMN_PLANT_TYPE + " = " + newType +
+                " AND " + PlantCountEntry.COLUMN_STATUS + " = " + newStatus + ";";
+    }
+
+    /**
+     * Returns the trigger statements that stop counting the OLD plant row
+     */
+    private static String decrementCount() {
+        String oldType = "OLD." + PlantEntry.COLUMN_PLANT_TYPE;
+        String oldStatus = getStatusAtCountedAt("OLD." + PlantEntry.COLUMN_LAST_WATERED_TIME);
+        return "UPDATE " + PlantCountEntry.TABLE_NAME +
+                " SET " + PlantCountEntry.COLUMN_COUNT + " = " + PlantCountEntry.COLUMN_COUNT + " - 1" +
+                " WHERE " + PlantCountEntry.COLUMN_PLANT_TYPE + " = " + oldType +
+                " AND " + PlantCountEntry.COLUMN_STATUS + " = " + oldStatus + ";";
     }
 }
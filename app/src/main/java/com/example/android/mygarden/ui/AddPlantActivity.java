@@ -16,17 +16,18 @@ package com.example.android.mygarden.ui;
 * limitations under the License.
 */
 
-import android.content.ContentValues;
+import android.content.ContentProviderResult;
+import android.content.Context;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
 import android.widget.ImageView;
+import android.widget.Toast;
 
-import com.example.android.mygarden.PlantWateringService;
+import com.example.android.mygarden.PlantWriteQueue;
 import com.example.android.mygarden.R;
-import com.example.android.mygarden.provider.PlantContract;
 
 public class AddPlantActivity extends AppCompatActivity {
 
@@ -60,15 +61,18 @@ public class AddPlantActivity extends AppCompatActivity {
         ImageView imgView = (ImageView) view.findViewById(R.id.plant_type_image);
         int plantType = (int) imgView.getTag();
         long timeNow = System.currentTimeMillis();
-        // Insert the new plant into DB
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(PlantContract.PlantEntry.COLUMN_PLANT_TYPE, plantType);
-        contentValues.put(PlantContract.PlantEntry.COLUMN_CREATION_TIME, timeNow);
-        contentValues.put(PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME, timeNow);
-        getContentResolver().insert(PlantContract.PlantEntry.CONTENT_URI, contentValues);
-        // update widget UI after adding plant
-        PlantWateringService.startActionUpdatePlantWidgets(this);
-        // Close this activity
+        // Insert the new plant into DB in the background. The garden shows it right away,
+        // and the widgets are updated once it's added
+        final Context appContext = getApplicationContext();
+        PlantWriteQueue.insertPlant(this, plantType, timeNow, new PlantWriteQueue.OnWriteCompleteListener() {
+            @Override
+            public void onWriteComplete(ContentProviderResult result) {
+                if (result == null) {
+                    Toast.makeText(appContext, R.string.add_plant_failed, Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+        // Close this activity right away, the garden drops the new plant again if it can't be added
         finish();
     }
 
@@ -0,0 +1,440 @@
+package com.example.android.mygarden.ui;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.support.v4.view.GestureDetectorCompat;
+import android.support.v4.view.ViewCompat;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+import android.widget.OverScroller;
+
+import com.example.android.mygarden.R;
+import com.example.android.mygarden.utils.PlantImages;
+import com.example.android.mygarden.utils.PlantLifecycle;
+import com.example.android.mygarden.utils.PlantSnapshot;
+import com.example.android.mygarden.utils.PlantUtils;
+
+/**
+ * Draws a whole garden in a single view, as a grid of plant sprites that can be scrolled and
+ * pinch-zoomed. Meant for gardens too large for a RecyclerView of inflated items: every sprite
+ * comes from one pre-scaled atlas bitmap, only the rows on screen are drawn, and nothing is
+ * allocated per frame. Zooming reflows the grid to as many columns as fit the width, keeping
+ * the plant under the fingers in place.
+ * <p>
+ * While the aging ticker runs, the garden is evaluated again as its plants cross lifecycle
+ * thresholds, and redrawn if any sprite changed.
+ */
+public class GardenCanvasView extends View {
+
+    /**
+     * Called when a plant is tapped
+     */
+    public interface OnPlantClickListener {
+        void onPlantClick(long plantId);
+    }
+
+    // Size of a cell at zoom 1, and the range the garden can be zoomed in
+    private static final float CELL_SIZE_DP = 64;
+    private static final float MIN_ZOOM = 0.25f;
+    private static final float MAX_ZOOM = 2f;
+    // Gap around each plant, relative to the cell size
+    private static final float CELL_INSET = 0.04f;
+    // In a large garden some plant crosses a threshold all the time, so the garden is
+    // evaluated again at most this often, and sprites lag their plant by up to this much
+    private static final long MIN_AGING_MILLIS = PlantLifecycle.MINUTE_MILLISECONDS;
+    // The aging ticker only tracks the garden as a whole, under this ID
+    private static final long GARDEN_TICKER_ID = 0;
+
+    private final float mCellSize;
+    private final Paint mSpritePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF mCellRect = new RectF();
+    private final ScaleGestureDetector mScaleDetector;
+    private final GestureDetectorCompat mGestureDetector;
+    private final OverScroller mScroller;
+
+    // The sprite atlas, built in the background once the view is attached. mSpriteRects holds
+    // the atlas area of every sprite, indexed by PlantImages.getImageIndex.
+    private Bitmap mAtlas;
+    private Rect[] mSpriteRects;
+    private AsyncTask<Void, Void, Bitmap> mAtlasTask;
+
+    private PlantSnapshot mPlants = PlantSnapshot.EMPTY;
+    private int mTypeCount;
+    // The sprite of every plant, or -1 for plants of unknown types
+    private short[] mSprites = new short[0];
+    // The plants evaluated at the last transition, reused while the garden stays the same size
+    private byte[] mStatuses = new byte[0];
+    private byte[] mSizes = new byte[0];
+    // Whether a transition passed while the view was hidden, to be caught up once it's shown
+    private boolean mAgedWhileHidden;
+
+    private final PlantAgingTicker mAgingTicker = new PlantAgingTicker(
+            new PlantAgingTicker.OnPlantTransitionListener() {
+                @Override
+                public void onPlantTransition(long plantId) {
+                    if (isShown()) {
+                        agePlants();
+                    } else {
+                        mAgedWhileHidden = true;
+                    }
+                }
+            });
+
+    private float mZoom = 1f;
+    private int mColumns = 1;
+    private float mScrollY;
+
+    private OnPlantClickListener mListener;
+
+    public GardenCanvasView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mCellSize = CELL_SIZE_DP * context.getResources().getDisplayMetrics().density;
+        mScroller = new OverScroller(context);
+        mScaleDetector = new ScaleGestureDetector(context, new ScaleListener());
+        mGestureDetector = new GestureDetectorCompat(context, new GestureListener());
+    }
+
+    public void setOnPlantClickListener(OnPlantClickListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Displays the given plants, in snapshot order. The scroll position is kept.
+     *
+     * @param plants The plants to display
+     */
+    public void setPlants(PlantSnapshot plants) {
+        int typeCount = PlantUtils.getPlantTypeCount(getContext());
+        short[] sprites = new short[plants.size()];
+        for (int i = 0; i < sprites.length; i++) {
+            sprites[i] = (short) PlantImages.getImageIndex(typeCount,
+                    plants.getType(i), plants.getStatus(i), plants.getSize(i));
+        }
+        mPlants = plants;
+        mTypeCount = typeCount;
+        mSprites = sprites;
+        mAgedWhileHidden = false;
+        mScrollY = clampScroll(mScrollY);
+        invalidate();
+        scheduleAging(plants.getTime());
+    }
+
+    /**
+     * Starts evaluating the plants again as they age, while the garden is on screen
+     */
+    public void startAgingTicker() {
+        mAgingTicker.start();
+    }
+
+    /**
+     * Stops evaluating the plants as they age, e.g. once the garden is off screen
+     */
+    public void stopAgingTicker() {
+        mAgingTicker.stop();
+    }
+
+    /**
+     * Evaluates the plants at the current time, redraws the garden if any sprite changed, and
+     * schedules the next transition
+     */
+    private void agePlants() {
+        mAgedWhileHidden = false;
+        PlantSnapshot plants = mPlants;
+        int count = plants.size();
+        if (mStatuses.length != count) {
+            mStatuses = new byte[count];
+            mSizes = new byte[count];
+        }
+        long timeNow = System.currentTimeMillis();
+        plants.evaluate(timeNow, mStatuses, mSizes);
+
+        boolean changed = false;
+        for (int i = 0; i < count; i++) {
+            short sprite = (short) PlantImages.getImageIndex(mTypeCount,
+                    plants.getType(i), mStatuses[i], mSizes[i]);
+            if (sprite != mSprites[i]) {
+                mSprites[i] = sprite;
+                changed = true;
+            }
+        }
+        if (changed) invalidate();
+        scheduleAging(timeNow);
+    }
+
+    private void scheduleAging(long timeNow) {
+        long transitionTime = mPlants.getEarliestTransitionTime(timeNow);
+        if (transitionTime != Long.MAX_VALUE) {
+            transitionTime = Math.max(transitionTime, timeNow + MIN_AGING_MILLIS);
+        }
+        mAgingTicker.schedule(GARDEN_TICKER_ID, transitionTime);
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        if (mAgedWhileHidden && isShown()) agePlants();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mAtlas == null && mAtlasTask == null) buildAtlas();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        if (mAtlasTask != null) {
+            mAtlasTask.cancel(false);
+            mAtlasTask = null;
+        }
+        if (mAtlas != null) {
+            mAtlas.recycle();
+            mAtlas = null;
+        }
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * Decodes every plant image and scales it into one atlas bitmap, one sprite per cell size
+     */
+    private void buildAtlas() {
+        final Context context = getContext().getApplicationContext();
+        final int typeCount = PlantUtils.getPlantTypeCount(context);
+        final int spriteCount = PlantImages.getImageCount(typeCount);
+        final int spriteSize = Math.max(1, Math.round(mCellSize));
+        final int atlasColumns = (int) Math.ceil(Math.sqrt(spriteCount));
+        final Rect[] spriteRects = new Rect[spriteCount];
+        for (int i = 0; i < spriteCount; i++) {
+            int left = (i % atlasColumns) * spriteSize;
+            int top = (i / atlasColumns) * spriteSize;
+            spriteRects[i] = new Rect(left, top, left + spriteSize, top + spriteSize);
+        }
+
+        mAtlasTask = new AsyncTask<Void, Void, Bitmap>() {
+            @Override
+            protected Bitmap doInBackground(Void... params) {
+                int atlasRows = (spriteCount + atlasColumns - 1) / atlasColumns;
+                Bitmap atlas = Bitmap.createBitmap(atlasColumns * spriteSize,
+                        atlasRows * spriteSize, Bitmap.Config.ARGB_8888);
+                Canvas canvas = new Canvas(atlas);
+                Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+                Resources resources = context.getResources();
+                for (int type = 0; type < typeCount; type++) {
+                    for (int status = 0; status < PlantImages.STATUS_COUNT; status++) {
+                        for (int size = 0; size < PlantImages.SIZE_COUNT; size++) {
+                            drawSprite(canvas, paint, resources,
+                                    PlantUtils.getPlantImgRes(context, type, status, size),
+                                    spriteRects[PlantImages.getImageIndex(typeCount, type, status, size)]);
+                        }
+                    }
+                }
+                drawSprite(canvas, paint, resources, R.drawable.empty_pot,
+                        spriteRects[spriteCount - 1]);
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                    // Keeps zoomed out sprites smooth
+                    atlas.setHasMipMap(true);
+                }
+                return atlas;
+            }
+
+            @Override
+            protected void onPostExecute(Bitmap atlas) {
+                mAtlasTask = null;
+                mAtlas = atlas;
+                mSpriteRects = spriteRects;
+                invalidate();
+            }
+
+            @Override
+            protected void onCancelled(Bitmap atlas) {
+                if (atlas != null) atlas.recycle();
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private static void drawSprite(Canvas canvas, Paint paint, Resources resources, int imgRes,
+                                   Rect spriteRect) {
+        if (imgRes == 0) return;
+        Bitmap image = BitmapFactory.decodeResource(resources, imgRes);
+        if (image == null) return;
+        // Keep the image's aspect ratio, centered at the bottom of the sprite like in a pot
+        float scale = Math.min((float) spriteRect.width() / image.getWidth(),
+                (float) spriteRect.height() / image.getHeight());
+        float width = image.getWidth() * scale;
+        float height = image.getHeight() * scale;
+        float left = spriteRect.left + (spriteRect.width() - width) / 2;
+        float top = spriteRect.bottom - height;
+        canvas.drawBitmap(image, null, new RectF(left, top, left + width, top + height), paint);
+        image.recycle();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateColumns();
+        mScrollY = clampScroll(mScrollY);
+    }
+
+    private void updateColumns() {
+        int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        mColumns = Math.max(1, (int) (width / (mCellSize * mZoom)));
+    }
+
+    private int getRowCount() {
+        return (mPlants.size() + mColumns - 1) / mColumns;
+    }
+
+    private float clampScroll(float scrollY) {
+        float contentHeight = getRowCount() * mCellSize * mZoom + getPaddingTop() + getPaddingBottom();
+        float maxScroll = Math.max(0, contentHeight - getHeight());
+        return Math.max(0, Math.min(maxScroll, scrollY));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mAtlas == null) return;
+
+        final float cell = mCellSize * mZoom;
+        final float inset = cell * CELL_INSET;
+        final float originX = getPaddingLeft();
+        final float originY = getPaddingTop() - mScrollY;
+        final int count = mSprites.length;
+
+        // Only visit the rows that intersect the viewport
+        int firstRow = Math.max(0, (int) ((mScrollY - getPaddingTop()) / cell));
+        int lastRow = Math.min(getRowCount() - 1,
+                (int) ((mScrollY + getHeight() - getPaddingTop()) / cell));
+        for (int row = firstRow; row <= lastRow; row++) {
+            float top = originY + row * cell;
+            int end = Math.min(count, (row + 1) * mColumns);
+            for (int i = row * mColumns; i < end; i++) {
+                int sprite = mSprites[i];
+                if (sprite < 0) continue;
+                float left = originX + (i - row * mColumns) * cell;
+                mCellRect.set(left + inset, top + inset, left + cell - inset, top + cell - inset);
+                canvas.drawBitmap(mAtlas, mSpriteRects[sprite], mCellRect, mSpritePaint);
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the plant at the given view coordinates
+     *
+     * @return The plant's position in the snapshot, or -1 if there is no plant there
+     */
+    public int getPlantPositionAt(float x, float y) {
+        float cell = mCellSize * mZoom;
+        float contentX = x - getPaddingLeft();
+        float contentY = y - getPaddingTop() + mScrollY;
+        if (contentX < 0 || contentY < 0) return -1;
+        int column = (int) (contentX / cell);
+        int row = (int) (contentY / cell);
+        if (column >= mColumns) return -1;
+        int position = row * mColumns + column;
+        return position < mPlants.size() ? position : -1;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = mScaleDetector.onTouchEvent(event);
+        handled |= mGestureDetector.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    public void computeScroll() {
+        if (mScroller.computeScrollOffset()) {
+            mScrollY = clampScroll(mScroller.getCurrY());
+            ViewCompat.postInvalidateOnAnimation(this);
+        }
+    }
+
+    private class GestureListener extends GestureDetector.SimpleOnGestureListener {
+        @Override
+        public boolean onDown(MotionEvent e) {
+            mScroller.forceFinished(true);
+            return true;
+        }
+
+        @Override
+        public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+            if (mScaleDetector.isInProgress()) return false;
+            mScrollY = clampScroll(mScrollY + distanceY);
+            invalidate();
+            return true;
+        }
+
+        @Override
+        public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
+            int maxScroll = (int) clampScroll(Float.MAX_VALUE);
+            mScroller.fling(0, (int) mScrollY, 0, (int) -velocityY, 0, 0, 0, maxScroll);
+            ViewCompat.postInvalidateOnAnimation(GardenCanvasView.this);
+            return true;
+        }
+
+        @Override
+        public boolean onSingleTapUp(MotionEvent e) {
+            performClick();
+            int position = getPlantPositionAt(e.getX(), e.getY());
+            if (position < 0 || mListener == null) return false;
+            mListener.onPlantClick(mPlants.getId(position));
+            return true;
+        }
+    }
+
+    private class ScaleListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            float zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, mZoom * detector.getScaleFactor()));
+            if (zoom == mZoom) return true;
+
+            // Find the plant under the focus point, and where in its row the focus is
+            float focusX = detector.getFocusX();
+            float focusY = detector.getFocusY();
+            float oldCell = mCellSize * mZoom;
+            float contentY = Math.max(0, focusY - getPaddingTop() + mScrollY);
+            int row = (int) (contentY / oldCell);
+            float rowOffset = contentY / oldCell - row;
+            int column = Math.max(0, Math.min(mColumns - 1,
+                    (int) ((focusX - getPaddingLeft()) / oldCell)));
+            int anchor = row * mColumns + column;
+
+            // Reflow, then scroll so the anchor plant's row is under the focus point again
+            mZoom = zoom;
+            updateColumns();
+            float newCell = mCellSize * mZoom;
+            mScrollY = clampScroll((anchor / mColumns + rowOffset) * newCell
+                    + getPaddingTop() - focusY);
+            invalidate();
+            return true;
+        }
+    }
+}
@@ -18,21 +18,26 @@ package com.example.android.mygarden.ui;
 
 import android.content.Intent;
 import android.database.Cursor;
-import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.ImageView;
+import android.widget.TextView;
 
+import com.example.android.mygarden.BuildConfig;
+import com.example.android.mygarden.PlantWateringService;
+import com.example.android.mygarden.PlantWriteQueue;
 import com.example.android.mygarden.R;
+import com.example.android.mygarden.provider.PlantContract;
+import com.example.android.mygarden.utils.PlantMetrics;
+import com.example.android.mygarden.utils.PlantSnapshot;
 
-import static com.example.android.mygarden.provider.PlantContract.BASE_CONTENT_URI;
-import static com.example.android.mygarden.provider.PlantContract.PATH_PLANTS;
 import static com.example.android.mygarden.provider.PlantContract.PlantEntry;
 
 public class MainActivity
@@ -40,9 +45,63 @@ public class MainActivity
         implements LoaderManager.LoaderCallbacks<Cursor> {
 
     private static final int GARDEN_LOADER_ID = 100;
+    // Loads the whole garden at once for the overview
+    private static final int OVERVIEW_LOADER_ID = 101;
+    private static final String STATE_OVERVIEW = "overview";
+    // Number of plants loaded at a time, and how close to the end of the loaded plants the
+    // user can scroll before the next page is requested
+    private static final int GARDEN_PAGE_SIZE = 100;
+    private static final int GARDEN_PREFETCH_DISTANCE = 40;
+    // How often the debug metrics overlay is refreshed
+    private static final long METRICS_REFRESH_INTERVAL = 1000;
+
     private PlantListAdapter mAdapter;
+    // The number of plants loaded so far. The adapter catches up with it asynchronously.
+    private int mLoadedPlantCount;
 
     private RecyclerView mGardenRecyclerView;
+    // Displays the whole garden in a single view, for gardens too large for the list
+    private GardenCanvasView mGardenCanvasView;
+    private boolean mOverview;
+
+    // Shows the provider's metrics in debug builds
+    private TextView mMetricsOverlay;
+    private final Runnable mRefreshMetrics = new Runnable() {
+        @Override
+        public void run() {
+            Bundle metrics = getContentResolver().call(PlantEntry.CONTENT_URI,
+                    PlantContract.METHOD_METRICS, null, null);
+            if (metrics != null) mMetricsOverlay.setText(PlantMetrics.format(metrics));
+            mMetricsOverlay.postDelayed(this, METRICS_REFRESH_INTERVAL);
+        }
+    };
+
+    // Shows plants being added or removed before the garden is loaded again
+    private final PlantWriteQueue.OnPendingWritesChangedListener mPendingWritesListener =
+            new PlantWriteQueue.OnPendingWritesChangedListener() {
+                @Override
+                public void onPendingWritesChanged() {
+                    mAdapter.refreshPendingWrites();
+                }
+            };
+
+    private final LoaderManager.LoaderCallbacks<PlantSnapshot> mOverviewCallbacks =
+            new LoaderManager.LoaderCallbacks<PlantSnapshot>() {
+                @Override
+                public Loader<PlantSnapshot> onCreateLoader(int id, Bundle args) {
+                    return new PlantSnapshotLoader(MainActivity.this);
+                }
+
+                @Override
+                public void onLoadFinished(Loader<PlantSnapshot> loader, PlantSnapshot plants) {
+                    mGardenCanvasView.setPlants(plants);
+                }
+
+                @Override
+                public void onLoaderReset(Loader<PlantSnapshot> loader) {
+                    mGardenCanvasView.setPlants(PlantSnapshot.EMPTY);
+                }
+            };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -51,36 +110,136 @@ public class MainActivity
 
         // The main activity displays the garden as a grid layout recycler view
         mGardenRecyclerView = (RecyclerView) findViewById(R.id.plants_list_recycler_view);
-        mGardenRecyclerView.setLayoutManager(
-                new GridLayoutManager(this, 4)
-        );
+        final GridLayoutManager layoutManager = new GridLayoutManager(this, 4);
+        mGardenRecyclerView.setLayoutManager(layoutManager);
         mAdapter = new PlantListAdapter(this, null);
         mGardenRecyclerView.setAdapter(mAdapter);
 
+        // Load the next page of plants when the user gets close to the end of the loaded ones
+        mGardenRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0) loadNextPageIfNeeded(layoutManager);
+            }
+        });
+
+        mGardenCanvasView = (GardenCanvasView) findViewById(R.id.garden_canvas_view);
+        mGardenCanvasView.setOnPlantClickListener(new GardenCanvasView.OnPlantClickListener() {
+            @Override
+            public void onPlantClick(long plantId) {
+                openPlantDetail(plantId);
+            }
+        });
+
+        mMetricsOverlay = (TextView) findViewById(R.id.metrics_overlay);
+        if (BuildConfig.DEBUG) mMetricsOverlay.setVisibility(View.VISIBLE);
+
         getSupportLoaderManager().initLoader(GARDEN_LOADER_ID, null, this);
+        setOverview(savedInstanceState != null && savedInstanceState.getBoolean(STATE_OVERVIEW));
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putBoolean(STATE_OVERVIEW, mOverview);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        menu.findItem(R.id.action_overview).setChecked(mOverview);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_overview) {
+            setOverview(!mOverview);
+            item.setChecked(mOverview);
+            return true;
+        }
+        if (item.getItemId() == R.id.action_water_all) {
+            // Waters the whole garden with a single update, the loaders reload once it's done
+            PlantWateringService.startActionWaterAllPlants(this);
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Switches between the list of plants and the overview of the whole garden. The whole
+     * garden is only loaded while the overview is displayed.
+     */
+    private void setOverview(boolean overview) {
+        mOverview = overview;
+        mGardenRecyclerView.setVisibility(overview ? View.GONE : View.VISIBLE);
+        mGardenCanvasView.setVisibility(overview ? View.VISIBLE : View.GONE);
+        if (overview) {
+            getSupportLoaderManager().initLoader(OVERVIEW_LOADER_ID, null, mOverviewCallbacks);
+        } else {
+            getSupportLoaderManager().destroyLoader(OVERVIEW_LOADER_ID);
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Redraw plants as they age while the garden is visible
+        mAdapter.startAgingTicker();
+        mGardenCanvasView.startAgingTicker();
+        // Plants may have been added or removed while another activity was in front
+        PlantWriteQueue.addOnPendingWritesChangedListener(mPendingWritesListener);
+        mAdapter.refreshPendingWrites();
+        if (BuildConfig.DEBUG) mMetricsOverlay.post(mRefreshMetrics);
+    }
+
+    @Override
+    protected void onStop() {
+        mAdapter.stopAgingTicker();
+        mGardenCanvasView.stopAgingTicker();
+        PlantWriteQueue.removeOnPendingWritesChangedListener(mPendingWritesListener);
+        mMetricsOverlay.removeCallbacks(mRefreshMetrics);
+        super.onStop();
     }
 
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        Uri PLANT_URI = BASE_CONTENT_URI.buildUpon().appendPath(PATH_PLANTS).build();
-        return new CursorLoader(this, PLANT_URI, null,
-                null, null, PlantEntry.COLUMN_CREATION_TIME);
+        return new PlantPageLoader(this, null,
+                PlantEntry.COLUMN_CREATION_TIME, GARDEN_PAGE_SIZE);
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
-        cursor.moveToFirst();
-        mAdapter.swapCursor(cursor);
+        if (cursor != null) cursor.moveToFirst();
+        mLoadedPlantCount = cursor == null ? 0 : cursor.getCount();
+        mAdapter.swapCursor(cursor, ((PlantPageLoader) loader).hasMorePages());
+        // The loaded plants may not fill the screen yet
+        loadNextPageIfNeeded((GridLayoutManager) mGardenRecyclerView.getLayoutManager());
     }
 
     @Override
     public void onLoaderReset(Loader loader) {
+        mLoadedPlantCount = 0;
+        mAdapter.swapCursor(null, false);
+    }
 
+    private void loadNextPageIfNeeded(GridLayoutManager layoutManager) {
+        int lastVisible = layoutManager.findLastVisibleItemPosition();
+        if (lastVisible + GARDEN_PREFETCH_DISTANCE < mLoadedPlantCount) return;
+        Loader<Cursor> loader = getSupportLoaderManager().getLoader(GARDEN_LOADER_ID);
+        if (loader != null) {
+            ((PlantPageLoader) loader).loadNextPage();
+        }
     }
 
     public void onPlantClick(View view) {
         ImageView imgView = (ImageView) view.findViewById(R.id.plant_list_item_image);
-        long plantId = (long) imgView.getTag();
+        openPlantDetail((long) imgView.getTag());
+    }
+
+    private void openPlantDetail(long plantId) {
+        // Plants that are still being added have no database ID yet
+        if (plantId < 0) return;
         Intent intent = new Intent(getBaseContext(), PlantDetailActivity.class);
         intent.putExtra(PlantDetailActivity.EXTRA_PLANT_ID, plantId);
         startActivity(intent);
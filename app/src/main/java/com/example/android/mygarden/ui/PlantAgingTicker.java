@@ -0,0 +1,185 @@
+package com.example.android.mygarden.ui;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.os.Handler;
+import android.support.v4.util.LongSparseArray;
+
+import java.util.PriorityQueue;
+
+/**
+ * Tells when displayed plants cross a lifecycle threshold and need to be redrawn. Keeps a
+ * min-heap of each scheduled plant's next transition time and wakes up once per transition,
+ * so plants that age on screen are refreshed without rebinding everything on a timer.
+ * <p>
+ * All methods must be called on the main thread, the listener is called there too.
+ */
+public class PlantAgingTicker {
+
+    /**
+     * Called when a scheduled plant reached its transition time. The plant is no longer
+     * scheduled, rebinding it is expected to schedule its next transition.
+     */
+    public interface OnPlantTransitionListener {
+        void onPlantTransition(long plantId);
+    }
+
+    private final Handler mHandler = new Handler();
+    private final OnPlantTransitionListener mListener;
+
+    // The transitions, soonest first. Entries aren't removed when a plant is unscheduled or
+    // rescheduled, they are skipped when they don't match mScheduled anymore.
+    private final PriorityQueue<Transition> mQueue = new PriorityQueue<>();
+    // The transition time of every scheduled plant, keyed by plant ID
+    private final LongSparseArray<Long> mScheduled = new LongSparseArray<>();
+
+    private boolean mStarted;
+    // The time the handler is set to wake up at, or Long.MAX_VALUE if it isn't
+    private long mWakeUpTime = Long.MAX_VALUE;
+
+    private final Runnable mTick = new Runnable() {
+        @Override
+        public void run() {
+            mWakeUpTime = Long.MAX_VALUE;
+            long timeNow = System.currentTimeMillis();
+            Transition head;
+            while ((head = mQueue.peek()) != null && head.mTime <= timeNow) {
+                mQueue.poll();
+                if (!isCurrent(head)) continue;
+                mScheduled.remove(head.mPlantId);
+                mListener.onPlantTransition(head.mPlantId);
+            }
+            scheduleWakeUp();
+        }
+    };
+
+    public PlantAgingTicker(OnPlantTransitionListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Schedules a plant's next transition, replacing the one scheduled before
+     *
+     * @param plantId        The plant's database ID
+     * @param transitionTime The time of its next transition, or Long.MAX_VALUE if it won't
+     *                       change anymore
+     */
+    public void schedule(long plantId, long transitionTime) {
+        if (transitionTime == Long.MAX_VALUE) {
+            unschedule(plantId);
+            return;
+        }
+        Long scheduled = mScheduled.get(plantId);
+        if (scheduled != null && scheduled == transitionTime) return;
+
+        mScheduled.put(plantId, transitionTime);
+        mQueue.add(new Transition(transitionTime, plantId));
+        compactIfNeeded();
+        scheduleWakeUp();
+    }
+
+    /**
+     * Stops tracking a plant, e.g. once it's scrolled out of view
+     *
+     * @param plantId The plant's database ID
+     */
+    public void unschedule(long plantId) {
+        mScheduled.remove(plantId);
+        compactIfNeeded();
+    }
+
+    /**
+     * Stops tracking all plants
+     */
+    public void clear() {
+        mScheduled.clear();
+        mQueue.clear();
+        mHandler.removeCallbacks(mTick);
+        mWakeUpTime = Long.MAX_VALUE;
+    }
+
+    /**
+     * Starts waking up for transitions. Transitions that passed while stopped are delivered
+     * right away.
+     */
+    public void start() {
+        mStarted = true;
+        mHandler.removeCallbacks(mTick);
+        mWakeUpTime = Long.MAX_VALUE;
+        mHandler.post(mTick);
+    }
+
+    /**
+     * Stops waking up for transitions, e.g. while the screen isn't visible. Scheduled
+     * transitions are kept.
+     */
+    public void stop() {
+        mStarted = false;
+        mHandler.removeCallbacks(mTick);
+        mWakeUpTime = Long.MAX_VALUE;
+    }
+
+    private boolean isCurrent(Transition transition) {
+        Long scheduled = mScheduled.get(transition.mPlantId);
+        return scheduled != null && scheduled == transition.mTime;
+    }
+
+    /**
+     * Sets the handler to wake up at the soonest current transition, unless it already is
+     */
+    private void scheduleWakeUp() {
+        if (!mStarted) return;
+        Transition head;
+        while ((head = mQueue.peek()) != null && !isCurrent(head)) {
+            mQueue.poll();
+        }
+        if (head == null || head.mTime >= mWakeUpTime) return;
+
+        mHandler.removeCallbacks(mTick);
+        mWakeUpTime = head.mTime;
+        mHandler.postDelayed(mTick, Math.max(0, head.mTime - System.currentTimeMillis()));
+    }
+
+    /**
+     * Drops stale entries once they outnumber the current ones, so scrolling back and forth
+     * doesn't grow the heap
+     */
+    private void compactIfNeeded() {
+        if (mQueue.size() <= 2 * mScheduled.size() + 16) return;
+        PriorityQueue<Transition> current = new PriorityQueue<>(Math.max(1, mScheduled.size()));
+        for (Transition transition : mQueue) {
+            if (isCurrent(transition)) current.add(transition);
+        }
+        mQueue.clear();
+        mQueue.addAll(current);
+    }
+
+    private static class Transition implements Comparable<Transition> {
+        final long mTime;
+        final long mPlantId;
+
+        Transition(long time, long plantId) {
+            mTime = time;
+            mPlantId = plantId;
+        }
+
+        @Override
+        public int compareTo(Transition other) {
+            return mTime < other.mTime ? -1 : (mTime == other.mTime ? 0 : 1);
+        }
+    }
+}
@@ -16,7 +16,9 @@ package com.example.android.mygarden.ui;
 * limitations under the License.
 */
 
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
+import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
@@ -27,31 +29,65 @@ import android.support.v7.app.AppCompatActivity;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import com.example.android.mygarden.PlantWateringService;
+import com.example.android.mygarden.PlantWriteQueue;
 import com.example.android.mygarden.R;
 import com.example.android.mygarden.provider.PlantContract;
+import com.example.android.mygarden.utils.PlantLifecycle;
+import com.example.android.mygarden.utils.PlantTextFormatter;
 import com.example.android.mygarden.utils.PlantUtils;
 
 import static com.example.android.mygarden.provider.PlantContract.BASE_CONTENT_URI;
 import static com.example.android.mygarden.provider.PlantContract.PATH_PLANTS;
 
 public class PlantDetailActivity extends AppCompatActivity
-        implements LoaderManager.LoaderCallbacks<Cursor> {
+        implements LoaderManager.LoaderCallbacks<Cursor>, PlantAgingTicker.OnPlantTransitionListener {
 
     private static final int SINGLE_LOADER_ID = 200;
     public static final String EXTRA_PLANT_ID = "com.example.android.mygarden.extra.PLANT_ID";
     long mPlantId;
 
+    // Formats the ages into their TextViews without allocating on every load
+    private PlantTextFormatter mTextFormatter;
+    private final char[] mPlantAgeBuffer = PlantTextFormatter.newNumberBuffer();
+    private final char[] mWaterAgeBuffer = PlantTextFormatter.newNumberBuffer();
+
+    // The last loaded plant, redrawn by mAgingTicker when it crosses a lifecycle threshold
+    private boolean mPlantLoaded;
+    private int mPlantType;
+    // The loaded plant as a garden of one, evaluated like every other garden
+    private final long[] mCreatedAt = new long[1];
+    private final long[] mWateredAt = new long[1];
+    private final byte[] mStatus = new byte[1];
+    private final byte[] mSize = new byte[1];
+    private PlantAgingTicker mAgingTicker;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_plant_detail);
         mPlantId = getIntent().getLongExtra(EXTRA_PLANT_ID, PlantContract.INVALID_PLANT_ID);
+        mTextFormatter = new PlantTextFormatter(this);
+        mAgingTicker = new PlantAgingTicker(this);
+        ((TextView) findViewById(R.id.plant_detail_name)).setText(String.valueOf(mPlantId));
         // This activity displays single plant information that is loaded using a cursor loader
         getSupportLoaderManager().initLoader(SINGLE_LOADER_ID, null, this);
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        mAgingTicker.start();
+    }
+
+    @Override
+    protected void onStop() {
+        mAgingTicker.stop();
+        super.onStop();
+    }
+
     public void onBackButtonClick(View view) {
         finish();
     }
@@ -76,29 +112,47 @@ public class PlantDetailActivity extends AppCompatActivity
         int waterTimeIndex = cursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME);
         int planTypeIndex = cursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_PLANT_TYPE);
 
-        int plantType = cursor.getInt(planTypeIndex);
-        long createdAt = cursor.getLong(createTimeIndex);
-        long wateredAt = cursor.getLong(waterTimeIndex);
+        mPlantType = cursor.getInt(planTypeIndex);
+        mCreatedAt[0] = cursor.getLong(createTimeIndex);
+        mWateredAt[0] = cursor.getLong(waterTimeIndex);
+        mPlantLoaded = true;
+        bindPlant();
+    }
+
+    /**
+     * Redraws the plant once it crossed a lifecycle threshold
+     */
+    @Override
+    public void onPlantTransition(long plantId) {
+        if (mPlantLoaded) bindPlant();
+    }
+
+    /**
+     * Displays the last loaded plant as it looks now, and schedules it to be displayed again
+     * when it looks different next
+     */
+    private void bindPlant() {
+        long createdAt = mCreatedAt[0];
+        long wateredAt = mWateredAt[0];
         long timeNow = System.currentTimeMillis();
 
-        int plantImgRes = PlantUtils.getPlantImageRes(this, timeNow - createdAt, timeNow - wateredAt, plantType);
+        PlantLifecycle.evaluate(mCreatedAt, mWateredAt, 1, timeNow, mStatus, mSize);
+        int plantImgRes = PlantUtils.getPlantImgRes(this, mPlantType, mStatus[0], mSize[0]);
 
         ((ImageView) findViewById(R.id.plant_detail_image)).setImageResource(plantImgRes);
-        ((TextView) findViewById(R.id.plant_detail_name)).setText(String.valueOf(mPlantId));
-        ((TextView) findViewById(R.id.plant_age_number)).setText(
-                String.valueOf(PlantUtils.getDisplayAgeInt(timeNow - createdAt))
-        );
-        ((TextView) findViewById(R.id.plant_age_unit)).setText(
-                PlantUtils.getDisplayAgeUnit(this, timeNow - createdAt)
-        );
-        ((TextView) findViewById(R.id.last_watered_number)).setText(
-                String.valueOf(PlantUtils.getDisplayAgeInt(timeNow - wateredAt))
-        );
-        ((TextView) findViewById(R.id.last_watered_unit)).setText(
-                PlantUtils.getDisplayAgeUnit(this, timeNow - wateredAt)
-        );
-        int waterPercent = 100 - ((int) (100 * (timeNow - wateredAt) / PlantUtils.MAX_AGE_WITHOUT_WATER));
+        mTextFormatter.setDisplayAge(
+                (TextView) findViewById(R.id.plant_age_number), mPlantAgeBuffer,
+                (TextView) findViewById(R.id.plant_age_unit),
+                timeNow - createdAt);
+        mTextFormatter.setDisplayAge(
+                (TextView) findViewById(R.id.last_watered_number), mWaterAgeBuffer,
+                (TextView) findViewById(R.id.last_watered_unit),
+                timeNow - wateredAt);
+        int waterPercent = 100 - ((int) (100 * (timeNow - wateredAt) / PlantLifecycle.MAX_AGE_WITHOUT_WATER));
         ((WaterLevelView) findViewById(R.id.water_level)).setValue(waterPercent);
+
+        mAgingTicker.schedule(mPlantId,
+                PlantLifecycle.getNextTransitionTime(createdAt, wateredAt, timeNow));
     }
 
     @Override
@@ -107,11 +161,18 @@ public class PlantDetailActivity extends AppCompatActivity
     }
 
     public void onCutButtonClick(View view) {
-        Uri SINGLE_PLANT_URI = ContentUris.withAppendedId(
-                BASE_CONTENT_URI.buildUpon().appendPath(PATH_PLANTS).build(), mPlantId);
-        getContentResolver().delete(SINGLE_PLANT_URI, null, null);
-        // update widget UI after deleting plant
-        PlantWateringService.startActionUpdatePlantWidgets(this);
+        // Delete the plant in the background. The garden drops it right away, and the widgets
+        // are updated once it's gone
+        final Context appContext = getApplicationContext();
+        PlantWriteQueue.deletePlant(this, mPlantId, new PlantWriteQueue.OnWriteCompleteListener() {
+            @Override
+            public void onWriteComplete(ContentProviderResult result) {
+                if (result == null) {
+                    Toast.makeText(appContext, R.string.cut_plant_failed, Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+        // Leave right away, the garden shows the plant again if it can't be deleted
         finish();
     }
 }
@@ -18,6 +18,9 @@ package com.example.android.mygarden.ui;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.os.AsyncTask;
+import android.support.v4.util.LongSparseArray;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -25,14 +28,38 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.example.android.mygarden.PlantWriteQueue;
 import com.example.android.mygarden.R;
-import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.utils.PlantLifecycle;
+import com.example.android.mygarden.utils.PlantMetrics;
+import com.example.android.mygarden.utils.PlantSnapshot;
+import com.example.android.mygarden.utils.PlantSnapshots;
+import com.example.android.mygarden.utils.PlantTextFormatter;
 import com.example.android.mygarden.utils.PlantUtils;
 
-public class PlantListAdapter extends RecyclerView.Adapter<PlantListAdapter.PlantViewHolder> {
+public class PlantListAdapter extends RecyclerView.Adapter<PlantListAdapter.PlantViewHolder>
+        implements PlantAgingTicker.OnPlantTransitionListener {
 
     private Context mContext;
-    private Cursor mCursor;
+    private PlantTextFormatter mTextFormatter;
+    // The plants currently displayed. Only replaced together with dispatching the changes
+    // that lead to it, so positions always match what the RecyclerView knows.
+    private PlantSnapshot mSnapshot = PlantSnapshot.EMPTY;
+    // The plants as last loaded, before PlantWriteQueue's pending writes are applied
+    private PlantSnapshot mLoaded = PlantSnapshot.EMPTY;
+    private boolean mHasMorePlants;
+    // Incremented on every swap, so diffs against a snapshot that was swapped out
+    // meanwhile are dropped
+    private int mGeneration;
+    // Redraws the plants on screen when they cross a lifecycle threshold
+    private final PlantAgingTicker mAgingTicker = new PlantAgingTicker(this);
+    // The holders attached to the RecyclerView, keyed by plant ID
+    private final LongSparseArray<PlantViewHolder> mAttachedHolders = new LongSparseArray<>();
+    // A plant evaluated again once it is past its snapshot's next transition
+    private final long[] mCreatedAt = new long[1];
+    private final long[] mWateredAt = new long[1];
+    private final byte[] mStatus = new byte[1];
+    private final byte[] mSize = new byte[1];
 
     /**
      * Constructor using the context and the db cursor
@@ -41,7 +68,11 @@ public class PlantListAdapter extends RecyclerView.Adapter<PlantListAdapter.Plan
      */
     public PlantListAdapter(Context context, Cursor cursor) {
         this.mContext = context;
-        this.mCursor = cursor;
+        this.mTextFormatter = new PlantTextFormatter(context);
+        this.mLoaded = PlantSnapshots.fromCursor(cursor, System.currentTimeMillis());
+        this.mSnapshot = mLoaded;
+        // Plants keep their views when others are inserted or removed
+        setHasStableIds(true);
     }
 
     /**
@@ -61,46 +92,182 @@ public class PlantListAdapter extends RecyclerView.Adapter<PlantListAdapter.Plan
 
     @Override
     public void onBindViewHolder(PlantViewHolder holder, int position) {
+        long startNanos = PlantMetrics.beginSection("PlantListAdapter.onBindViewHolder");
+        try {
+            PlantSnapshot snapshot = mSnapshot;
+            long plantId = snapshot.getId(position);
+            long createdAt = snapshot.getCreatedAt(position);
+            long wateredAt = snapshot.getWateredAt(position);
+            long timeNow = System.currentTimeMillis();
 
-        mCursor.moveToPosition(position);
-        int idIndex = mCursor.getColumnIndex(PlantEntry._ID);
-        int createTimeIndex = mCursor.getColumnIndex(PlantEntry.COLUMN_CREATION_TIME);
-        int waterTimeIndex = mCursor.getColumnIndex(PlantEntry.COLUMN_LAST_WATERED_TIME);
-        int plantTypeIndex = mCursor.getColumnIndex(PlantEntry.COLUMN_PLANT_TYPE);
+            // The snapshot's status and size hold until the plant's next transition after the
+            // snapshot was taken, past it they are evaluated again
+            int status = snapshot.getStatus(position);
+            int size = snapshot.getSize(position);
+            if (snapshot.getNextTransitionTime(position) <= timeNow) {
+                mCreatedAt[0] = createdAt;
+                mWateredAt[0] = wateredAt;
+                PlantLifecycle.evaluate(mCreatedAt, mWateredAt, 1, timeNow, mStatus, mSize);
+                status = mStatus[0];
+                size = mSize[0];
+            }
+            int imgRes = PlantUtils.getPlantImgRes(mContext, snapshot.getType(position), status, size);
 
-        long plantId = mCursor.getLong(idIndex);
-        int plantType = mCursor.getInt(plantTypeIndex);
-        long createdAt = mCursor.getLong(createTimeIndex);
-        long wateredAt = mCursor.getLong(waterTimeIndex);
-        long timeNow = System.currentTimeMillis();
+            holder.plantImageView.setImageResource(imgRes);
+            mTextFormatter.setNumber(holder.plantNameView, holder.plantNameBuffer, plantId);
+            holder.plantImageView.setTag(plantId);
 
-        int imgRes = PlantUtils.getPlantImageRes(mContext, timeNow - createdAt, timeNow - wateredAt, plantType);
+            holder.nextTransitionTime = PlantLifecycle.getNextTransitionTime(createdAt, wateredAt, timeNow);
+            if (mAttachedHolders.get(plantId) == holder) {
+                mAgingTicker.schedule(plantId, holder.nextTransitionTime);
+            }
+        } finally {
+            PlantMetrics.endSection("PlantListAdapter.onBindViewHolder", startNanos);
+        }
+    }
 
-        holder.plantImageView.setImageResource(imgRes);
-        holder.plantNameView.setText(String.valueOf(plantId));
-        holder.plantImageView.setTag(plantId);
+    @Override
+    public void onViewAttachedToWindow(PlantViewHolder holder) {
+        long plantId = holder.getItemId();
+        mAttachedHolders.put(plantId, holder);
+        mAgingTicker.schedule(plantId, holder.nextTransitionTime);
     }
 
-    public void swapCursor(Cursor newCursor) {
-        if (mCursor != null) {
-            mCursor.close();
+    @Override
+    public void onViewDetachedFromWindow(PlantViewHolder holder) {
+        long plantId = holder.getItemId();
+        if (mAttachedHolders.get(plantId) == holder) {
+            mAttachedHolders.remove(plantId);
+            mAgingTicker.unschedule(plantId);
         }
-        mCursor = newCursor;
-        if (mCursor != null) {
-            // Force the RecyclerView to refresh
-            this.notifyDataSetChanged();
+    }
+
+    /**
+     * Rebinds a visible plant that just crossed a lifecycle threshold
+     */
+    @Override
+    public void onPlantTransition(long plantId) {
+        PlantViewHolder holder = mAttachedHolders.get(plantId);
+        if (holder == null) return;
+        int position = holder.getAdapterPosition();
+        if (position != RecyclerView.NO_POSITION) notifyItemChanged(position);
+    }
+
+    /**
+     * Starts redrawing visible plants as they age, while the garden is on screen
+     */
+    public void startAgingTicker() {
+        mAgingTicker.start();
+    }
+
+    /**
+     * Stops redrawing visible plants as they age, e.g. once the garden is off screen
+     */
+    public void stopAgingTicker() {
+        mAgingTicker.stop();
+    }
+
+    /**
+     * Swaps in a new cursor. The plants are copied out of it right away, along with the
+     * plants being added or removed by PlantWriteQueue, then diffed against the displayed
+     * ones on a background thread, and only the actual inserts, removals and changes are
+     * dispatched. The cursor isn't kept or closed, the loader that delivered it owns it.
+     *
+     * @param newCursor     The new cursor, or null to display nothing
+     * @param hasMorePlants True if the garden has more plants after the ones in the cursor
+     */
+    public void swapCursor(Cursor newCursor, boolean hasMorePlants) {
+        mLoaded = PlantSnapshots.fromCursor(newCursor, System.currentTimeMillis());
+        mHasMorePlants = hasMorePlants;
+        show(PlantWriteQueue.applyPendingWrites(mLoaded, hasMorePlants, mLoaded.getTime()));
+    }
+
+    /**
+     * Displays the plants being added or removed by PlantWriteQueue right away, without
+     * waiting for the garden to be loaded again
+     */
+    public void refreshPendingWrites() {
+        show(PlantWriteQueue.applyPendingWrites(mLoaded, mHasMorePlants, System.currentTimeMillis()));
+    }
+
+    private void show(final PlantSnapshot newSnapshot) {
+        final int generation = ++mGeneration;
+        final PlantSnapshot oldSnapshot = mSnapshot;
+        if (newSnapshot == oldSnapshot) return;
+
+        // Nothing to diff against, or nothing left: no need to go off the main thread
+        if (oldSnapshot.size() == 0 || newSnapshot.size() == 0) {
+            mSnapshot = newSnapshot;
+            notifyDataSetChanged();
+            return;
         }
+
+        new AsyncTask<Void, Void, DiffUtil.DiffResult>() {
+            @Override
+            protected DiffUtil.DiffResult doInBackground(Void... params) {
+                return DiffUtil.calculateDiff(new SnapshotDiff(oldSnapshot, newSnapshot));
+            }
+
+            @Override
+            protected void onPostExecute(DiffUtil.DiffResult diffResult) {
+                // A newer swap will dispatch its own diff against the displayed snapshot
+                if (generation != mGeneration) return;
+                mSnapshot = newSnapshot;
+                diffResult.dispatchUpdatesTo(PlantListAdapter.this);
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
     /**
-     * Returns the number of items in the cursor
+     * Returns the number of displayed plants
      *
-     * @return Number of items in the cursor, or 0 if null
+     * @return Number of displayed plants, or 0 if there are none
      */
     @Override
     public int getItemCount() {
-        if (mCursor == null) return 0;
-        return mCursor.getCount();
+        return mSnapshot.size();
+    }
+
+    /**
+     * Returns the plant's database ID, which is stable across swaps
+     */
+    @Override
+    public long getItemId(int position) {
+        return mSnapshot.getId(position);
+    }
+
+    /**
+     * Plants are the same item if they have the same ID, and look the same if their type,
+     * status and size match
+     */
+    private static class SnapshotDiff extends DiffUtil.Callback {
+        private final PlantSnapshot mOld;
+        private final PlantSnapshot mNew;
+
+        SnapshotDiff(PlantSnapshot oldSnapshot, PlantSnapshot newSnapshot) {
+            mOld = oldSnapshot;
+            mNew = newSnapshot;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return mOld.getId(oldPosition) == mNew.getId(newPosition);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return mOld.looksSame(oldPosition, mNew, newPosition);
+        }
     }
 
     /**
@@ -110,6 +277,9 @@ public class PlantListAdapter extends RecyclerView.Adapter<PlantListAdapter.Plan
 
         ImageView plantImageView;
         TextView plantNameView;
+        final char[] plantNameBuffer = PlantTextFormatter.newNumberBuffer();
+        // When the bound plant looks different next
+        long nextTransitionTime = Long.MAX_VALUE;
 
         public PlantViewHolder(View itemView) {
             super(itemView);
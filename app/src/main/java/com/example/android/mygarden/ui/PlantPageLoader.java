@@ -0,0 +1,447 @@
+package com.example.android.mygarden.ui;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.MergeCursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.mygarden.provider.PlantContract;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.utils.PlantMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loads the garden one page at a time using the provider's keyset-paginated page URI.
+ * The delivered Cursor is the concatenation of all pages loaded so far. Call
+ * {@link #loadNextPage()} to append the next page, e.g. when the user scrolls close to the end.
+ * <p>
+ * Pages that were already delivered are reused when the next page is appended. When a single
+ * plant is updated, only the page holding it is queried again, as long as the page still
+ * holds the same plants. When plants are added or removed, all of the previously loaded
+ * pages are queried again.
+ * <p>
+ * The loader owns the delivered cursors and closes their pages once they are replaced,
+ * so clients must not close them.
+ */
+public class PlantPageLoader extends AsyncTaskLoader<Cursor> {
+
+    private final String[] mProjection;
+    private final String mOrderColumn;
+    private final int mPageSize;
+    private final PlantsObserver mObserver = new PlantsObserver();
+    private boolean mObserverRegistered;
+
+    // The last delivered result
+    private PagedCursor mCursor;
+    // The result the next load starts from, or null to load all pages again.
+    // Set on the main thread right before a load starts
+    private volatile PagedCursor mBase;
+    // Number of pages the next load should end up with
+    private volatile int mRequestedPages = 1;
+    // Incremented when plants are added or removed. A result loaded before the last change
+    // can't be reused.
+    private int mChangeCount;
+    private volatile int mLoadChangeCount;
+    // The plants updated since the last delivered result, whose pages the next load queries
+    // again. Only used on the main thread
+    private final Set<Long> mUpdatedIds = new HashSet<>();
+    private volatile long[] mLoadUpdatedIds;
+
+    /**
+     * @param context     The calling context
+     * @param projection  The columns to load
+     * @param orderColumn The column to sort by, either COLUMN_CREATION_TIME or COLUMN_LAST_WATERED_TIME
+     * @param pageSize    The number of plants in a page
+     */
+    public PlantPageLoader(Context context, String[] projection, String orderColumn, int pageSize) {
+        super(context);
+        mProjection = projection;
+        mOrderColumn = orderColumn;
+        mPageSize = pageSize;
+    }
+
+    /**
+     * Appends the next page to the loaded plants, unless the last page was already loaded
+     * or a load is in progress
+     */
+    public void loadNextPage() {
+        if (mCursor == null || !mCursor.hasMorePages() || mRequestedPages > mCursor.getPageCount()) {
+            return;
+        }
+        mRequestedPages = mCursor.getPageCount() + 1;
+        forceLoad();
+    }
+
+    /**
+     * @return True if the garden has more plants after the last delivered ones
+     */
+    public boolean hasMorePages() {
+        return mCursor != null && mCursor.hasMorePages();
+    }
+
+    @Override
+    protected void onForceLoad() {
+        boolean reusable = mCursor != null && mCursor.mChangeCount == mChangeCount;
+        mBase = reusable ? mCursor : null;
+        mLoadChangeCount = mChangeCount;
+        long[] updatedIds = new long[mUpdatedIds.size()];
+        int i = 0;
+        for (long id : mUpdatedIds) {
+            updatedIds[i++] = id;
+        }
+        mLoadUpdatedIds = updatedIds;
+        super.onForceLoad();
+    }
+
+    @Override
+    public void onContentChanged() {
+        mChangeCount++;
+        super.onContentChanged();
+    }
+
+    /**
+     * Called when a single plant was updated, without being added or removed
+     */
+    private void onPlantUpdated(long plantId) {
+        mUpdatedIds.add(plantId);
+        // Not onContentChanged(), which would load all of the pages again
+        super.onContentChanged();
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        PagedCursor base = mBase;
+        int requestedPages = mRequestedPages;
+        long[] updatedIds = mLoadUpdatedIds;
+
+        ArrayList<Page> pages = new ArrayList<>();
+        if (base != null) {
+            pages.addAll(base.mPages);
+            if (!refreshUpdatedPages(pages, updatedIds, base.hasMorePages())) {
+                // The updated plants moved between pages, start over
+                closePages(pages, base.mPages);
+                pages.clear();
+            }
+        }
+
+        boolean hasMore = pages.isEmpty() || pages.get(pages.size() - 1).isFull(mPageSize);
+        while (hasMore && pages.size() < requestedPages && !isLoadInBackgroundCanceled()) {
+            Page lastPage = pages.isEmpty() ? null : pages.get(pages.size() - 1);
+            Page page = lastPage == null
+                    ? queryPage(false, 0, 0)
+                    : queryPage(true, lastPage.mLastKey, lastPage.mLastId);
+            if (page == null) {
+                hasMore = false;
+                break;
+            }
+            pages.add(page);
+            hasMore = page.isFull(mPageSize);
+        }
+        if (pages.isEmpty()) return null;
+        return new PagedCursor(pages, hasMore, mLoadChangeCount, updatedIds);
+    }
+
+    /**
+     * Queries the pages holding the updated plants again, in place
+     *
+     * @param hasMore True if there are plants after the given pages
+     * @return False if a page no longer holds the same plants, so the pages can't be reused
+     */
+    private boolean refreshUpdatedPages(List<Page> pages, long[] updatedIds, boolean hasMore) {
+        boolean[] found = new boolean[updatedIds.length];
+        for (int i = 0; i < pages.size(); i++) {
+            Page page = pages.get(i);
+            if (!page.containsAny(updatedIds, found)) continue;
+            Page newPage = queryPage(page.mAfter, page.mAfterKey, page.mAfterId);
+            if (newPage == null) return false;
+            if (!newPage.holdsSamePlants(page)) {
+                newPage.mCursor.close();
+                return false;
+            }
+            pages.set(i, newPage);
+        }
+        if (!hasMore || pages.isEmpty()) return true;
+
+        // A plant that wasn't loaded may have moved into the loaded pages
+        Page lastPage = pages.get(pages.size() - 1);
+        for (int i = 0; i < updatedIds.length; i++) {
+            if (!found[i] && isBefore(updatedIds[i], lastPage.mLastKey, lastPage.mLastId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return True if the plant is sorted at or before the given position
+     */
+    private boolean isBefore(long plantId, long key, long id) {
+        Cursor cursor = getContext().getContentResolver().query(
+                ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId),
+                new String[]{mOrderColumn}, null, null, null);
+        if (cursor == null) return true;
+        try {
+            if (!cursor.moveToFirst()) return false;
+            long plantKey = cursor.getLong(0);
+            return plantKey < key || plantKey == key && plantId <= id;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Queries a page of plants and remembers where it starts and ends, while no one else is
+     * using it yet
+     *
+     * @param after    False for the first page, otherwise the page starts after afterKey and afterId
+     * @param afterKey The order column value of the plant before the page
+     * @param afterId  The ID of the plant before the page
+     * @return The page, or null if the query failed
+     */
+    private Page queryPage(boolean after, long afterKey, long afterId) {
+        Uri pageUri = after
+                ? PlantEntry.buildPageUri(mOrderColumn, afterKey, afterId, mPageSize)
+                : PlantEntry.buildPageUri(mOrderColumn, mPageSize);
+        Cursor cursor = getContext().getContentResolver().query(pageUri, mProjection, null, null, null);
+        if (cursor == null) return null;
+        PlantMetrics.increment("PlantPageLoader.pageQueries", 1);
+
+        int count = cursor.getCount();
+        long[] ids = new long[count];
+        long lastKey = afterKey;
+        if (count > 0) {
+            int keyIndex = cursor.getColumnIndexOrThrow(mOrderColumn);
+            int idIndex = cursor.getColumnIndexOrThrow(PlantEntry._ID);
+            for (int i = 0; cursor.moveToPosition(i); i++) {
+                ids[i] = cursor.getLong(idIndex);
+            }
+            lastKey = cursor.getLong(keyIndex);
+        }
+        return new Page(cursor, after, afterKey, afterId, ids, lastKey);
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        PagedCursor pagedCursor = (PagedCursor) cursor;
+        if (isReset()) {
+            if (pagedCursor != null) closePages(pagedCursor.mPages, null);
+            return;
+        }
+        PagedCursor oldCursor = mCursor;
+        mCursor = pagedCursor;
+        // The pages of the updated plants were queried again
+        if (pagedCursor != null && pagedCursor != oldCursor) {
+            for (long id : pagedCursor.mUpdatedIds) {
+                mUpdatedIds.remove(id);
+            }
+        }
+        if (isStarted()) {
+            super.deliverResult(cursor);
+        }
+        // Pages the new result didn't reuse are no longer displayed
+        if (oldCursor != null && oldCursor != pagedCursor) {
+            closePages(oldCursor.mPages, pagedCursor == null ? null : pagedCursor.mPages);
+        }
+    }
+
+    @Override
+    public void onCanceled(Cursor cursor) {
+        if (cursor != null) {
+            closePages(((PagedCursor) cursor).mPages, mCursor == null ? null : mCursor.mPages);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            // Observes the changed plant's URI too, so that single plants can be reloaded
+            getContext().getContentResolver().registerContentObserver(
+                    PlantEntry.CONTENT_URI, true, mObserver);
+            mObserverRegistered = true;
+        }
+        if (mCursor != null) {
+            deliverResult(mCursor);
+        }
+        if (takeContentChanged() || mCursor == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+        if (mCursor != null) closePages(mCursor.mPages, null);
+        mCursor = null;
+        mUpdatedIds.clear();
+        mRequestedPages = 1;
+    }
+
+    /**
+     * Closes the given pages, except for the ones still in use by another result
+     */
+    private static void closePages(List<Page> pages, List<Page> inUse) {
+        for (Page page : pages) {
+            if (inUse == null || !inUse.contains(page)) {
+                page.mCursor.close();
+            }
+        }
+    }
+
+    /**
+     * Reloads a single plant when its row URI is notified, and all of the plants otherwise.
+     * Before API 16 the URI isn't passed on, so every change reloads all of the plants.
+     */
+    private class PlantsObserver extends ContentObserver {
+
+        PlantsObserver() {
+            super(new Handler());
+        }
+
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            long plantId = PlantEntry.getPlantId(uri);
+            if (plantId == PlantContract.INVALID_PLANT_ID) {
+                onContentChanged();
+            } else {
+                onPlantUpdated(plantId);
+            }
+        }
+    }
+
+    /**
+     * A loaded page, along with where it starts and the plants it holds
+     */
+    private static class Page {
+
+        final Cursor mCursor;
+        // False for the first page, otherwise the page starts after mAfterKey and mAfterId
+        final boolean mAfter;
+        final long mAfterKey;
+        final long mAfterId;
+        final long[] mIds;
+        final long mLastKey;
+        final long mLastId;
+
+        Page(Cursor cursor, boolean after, long afterKey, long afterId, long[] ids, long lastKey) {
+            mCursor = cursor;
+            mAfter = after;
+            mAfterKey = afterKey;
+            mAfterId = afterId;
+            mIds = ids;
+            mLastKey = lastKey;
+            mLastId = ids.length > 0 ? ids[ids.length - 1] : afterId;
+        }
+
+        boolean isFull(int pageSize) {
+            return mIds.length == pageSize;
+        }
+
+        /**
+         * @param found Set to true for each of the ids in this page
+         * @return True if any of the ids is in this page
+         */
+        boolean containsAny(long[] ids, boolean[] found) {
+            boolean contains = false;
+            for (int i = 0; i < ids.length; i++) {
+                for (long pageId : mIds) {
+                    if (pageId == ids[i]) {
+                        found[i] = true;
+                        contains = true;
+                        break;
+                    }
+                }
+            }
+            return contains;
+        }
+
+        /**
+         * @return True if this page holds the same plants as the other page, in the same order,
+         * and ends at the same place, so that the pages after it are still valid
+         */
+        boolean holdsSamePlants(Page other) {
+            return mLastKey == other.mLastKey && Arrays.equals(mIds, other.mIds);
+        }
+    }
+
+    /**
+     * The pages loaded so far, presented as a single Cursor
+     */
+    private static class PagedCursor extends MergeCursor {
+
+        final List<Page> mPages;
+        private final boolean mHasMore;
+        // The value of mChangeCount the pages were loaded at
+        final int mChangeCount;
+        // The updated plants whose pages were queried again for this result
+        final long[] mUpdatedIds;
+
+        PagedCursor(List<Page> pages, boolean hasMore, int changeCount, long[] updatedIds) {
+            super(toCursors(pages));
+            mPages = pages;
+            mHasMore = hasMore;
+            mChangeCount = changeCount;
+            mUpdatedIds = updatedIds;
+        }
+
+        private static Cursor[] toCursors(List<Page> pages) {
+            Cursor[] cursors = new Cursor[pages.size()];
+            for (int i = 0; i < cursors.length; i++) {
+                cursors[i] = pages.get(i).mCursor;
+            }
+            return cursors;
+        }
+
+        int getPageCount() {
+            return mPages.size();
+        }
+
+        boolean hasMorePages() {
+            return mHasMore;
+        }
+    }
+}
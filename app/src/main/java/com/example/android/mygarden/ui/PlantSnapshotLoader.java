@@ -0,0 +1,233 @@
+package com.example.android.mygarden.ui;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.mygarden.provider.PlantContract;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.utils.PlantSnapshot;
+import com.example.android.mygarden.utils.PlantSnapshots;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Loads the whole garden, ordered by creation time, into a PlantSnapshot in the background and
+ * reloads it whenever the plants change. Unlike a CursorLoader, nothing needs to be closed
+ * and the rows are decoded off the main thread.
+ * <p>
+ * When single plants are updated, only their rows are queried and patched into a copy of the
+ * last snapshot. When plants are added or removed, the whole garden is loaded again.
+ */
+public class PlantSnapshotLoader extends AsyncTaskLoader<PlantSnapshot> {
+
+    private final PlantsObserver mObserver = new PlantsObserver();
+    private PlantSnapshot mPlants;
+    private boolean mObserverRegistered;
+
+    // The snapshot the next load patches, or null to load the whole garden again.
+    // Set on the main thread right before a load starts
+    private volatile PlantSnapshot mBase;
+    // Incremented when plants are added or removed, and the value mPlants was loaded at
+    private int mChangeCount;
+    private int mPlantsChangeCount;
+    private volatile int mLoadChangeCount;
+    // The plants updated since the last delivered snapshot. Only used on the main thread
+    private final Set<Long> mUpdatedIds = new HashSet<>();
+    private volatile long[] mLoadUpdatedIds;
+
+    public PlantSnapshotLoader(Context context) {
+        super(context);
+    }
+
+    @Override
+    protected void onForceLoad() {
+        mBase = mPlants != null && mPlantsChangeCount == mChangeCount ? mPlants : null;
+        mLoadChangeCount = mChangeCount;
+        long[] updatedIds = new long[mUpdatedIds.size()];
+        int i = 0;
+        for (long id : mUpdatedIds) {
+            updatedIds[i++] = id;
+        }
+        mLoadUpdatedIds = updatedIds;
+        super.onForceLoad();
+    }
+
+    @Override
+    public void onContentChanged() {
+        mChangeCount++;
+        super.onContentChanged();
+    }
+
+    /**
+     * Called when a single plant was updated, without being added or removed
+     */
+    private void onPlantUpdated(long plantId) {
+        mUpdatedIds.add(plantId);
+        // Not onContentChanged(), which would load the whole garden again
+        super.onContentChanged();
+    }
+
+    @Override
+    public PlantSnapshot loadInBackground() {
+        PlantSnapshot base = mBase;
+        PlantSnapshot plants = base != null ? patch(base, mLoadUpdatedIds) : null;
+        if (plants == null) plants = loadAll();
+        return plants;
+    }
+
+    private PlantSnapshot loadAll() {
+        Cursor cursor = getContext().getContentResolver().query(
+                PlantEntry.CONTENT_URI,
+                PlantSnapshots.PROJECTION,
+                null,
+                null,
+                PlantEntry.COLUMN_CREATION_TIME);
+        try {
+            return PlantSnapshots.fromCursor(cursor, System.currentTimeMillis());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Queries the updated plants and replaces them in a copy of the snapshot
+     *
+     * @return The patched snapshot, or null if the whole garden needs to be loaded again
+     */
+    private PlantSnapshot patch(PlantSnapshot base, long[] updatedIds) {
+        int count = base.size();
+        long[] ids = new long[count];
+        int[] types = new int[count];
+        long[] createdAt = new long[count];
+        long[] wateredAt = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = base.getId(i);
+            types[i] = base.getType(i);
+            createdAt[i] = base.getCreatedAt(i);
+            wateredAt[i] = base.getWateredAt(i);
+        }
+
+        for (long plantId : updatedIds) {
+            int position = indexOf(ids, plantId);
+            // Plants that aren't in the snapshot are being added or removed, and the
+            // directory notification for that reloads the whole garden
+            if (position == -1) continue;
+            Cursor cursor = getContext().getContentResolver().query(
+                    ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId),
+                    PlantSnapshots.PROJECTION, null, null, null);
+            try {
+                PlantSnapshot plant = PlantSnapshots.fromCursor(cursor, System.currentTimeMillis());
+                // A new creation time would move the plant within the garden
+                if (plant.size() != 1 || plant.getCreatedAt(0) != createdAt[position]) return null;
+                types[position] = plant.getType(0);
+                wateredAt[position] = plant.getWateredAt(0);
+            } finally {
+                if (cursor != null) cursor.close();
+            }
+        }
+        return PlantSnapshot.of(ids, types, createdAt, wateredAt, System.currentTimeMillis());
+    }
+
+    private static int indexOf(long[] ids, long id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public void deliverResult(PlantSnapshot plants) {
+        if (isReset()) return;
+        if (plants != mPlants) {
+            // Only the last started load delivers its result, so the mLoad fields are its own
+            mPlants = plants;
+            mPlantsChangeCount = mLoadChangeCount;
+            for (long id : mLoadUpdatedIds) {
+                mUpdatedIds.remove(id);
+            }
+        }
+        if (isStarted()) super.deliverResult(plants);
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            // Observes the changed plant's URI too, so that single plants can be reloaded
+            getContext().getContentResolver().registerContentObserver(
+                    PlantEntry.CONTENT_URI, true, mObserver);
+            mObserverRegistered = true;
+        }
+        if (mPlants != null) deliverResult(mPlants);
+        if (takeContentChanged() || mPlants == null) forceLoad();
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+        mPlants = null;
+        mUpdatedIds.clear();
+    }
+
+    /**
+     * Reloads a single plant when its row URI is notified, and the whole garden otherwise.
+     * Before API 16 the URI isn't passed on, so every change reloads the whole garden.
+     */
+    private class PlantsObserver extends ContentObserver {
+
+        PlantsObserver() {
+            super(new Handler());
+        }
+
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            long plantId = PlantEntry.getPlantId(uri);
+            if (plantId == PlantContract.INVALID_PLANT_ID) {
+                onContentChanged();
+            } else {
+                onPlantUpdated(plantId);
+            }
+        }
+    }
+}
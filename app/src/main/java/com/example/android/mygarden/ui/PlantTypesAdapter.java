@@ -17,8 +17,6 @@ package com.example.android.mygarden.ui;
 */
 
 import android.content.Context;
-import android.content.res.Resources;
-import android.content.res.TypedArray;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -32,7 +30,6 @@ import com.example.android.mygarden.utils.PlantUtils;
 public class PlantTypesAdapter extends RecyclerView.Adapter<PlantTypesAdapter.PlantViewHolder> {
 
     Context mContext;
-    TypedArray mPlantTypes;
 
     /**
      * Constructor using the context and the db cursor
@@ -41,8 +38,6 @@ public class PlantTypesAdapter extends RecyclerView.Adapter<PlantTypesAdapter.Pl
      */
     public PlantTypesAdapter(Context context) {
         mContext = context;
-        Resources res = mContext.getResources();
-        mPlantTypes = res.obtainTypedArray(R.array.plant_types);
     }
 
     /**
@@ -72,14 +67,13 @@ public class PlantTypesAdapter extends RecyclerView.Adapter<PlantTypesAdapter.Pl
     }
 
     /**
-     * Returns the number of items in the cursor
+     * Returns the number of plant types
      *
-     * @return Number of items in the cursor, or 0 if null
+     * @return Number of plant types in arrays.xml
      */
     @Override
     public int getItemCount() {
-        if (mPlantTypes == null) return 0;
-        return mPlantTypes.length();
+        return PlantUtils.getPlantTypeCount(mContext);
     }
 
     /**
@@ -1,27 +1,44 @@
 package com.example.android.mygarden.ui;
 
 
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Paint;
-import android.graphics.Path;
 import android.graphics.RectF;
 import android.support.v4.content.ContextCompat;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
 import android.view.View;
+import android.view.animation.DecelerateInterpolator;
 
 import com.example.android.mygarden.R;
 
+/**
+ * A circular meter showing the water level of a plant in percent. Changes of the value are
+ * animated; everything drawn is computed up front, so frames don't allocate.
+ */
 public class WaterLevelView extends View {
 
+    private static final long VALUE_ANIMATION_MILLIS = 600;
+
     private float mRadius;
     private float mStrokeWidth;
+    // The value set last, and the value currently drawn while animating towards it
     private int mValue;
+    private float mDrawnValue;
+    // The value drawn when the running animation started
+    private float mAnimationStartValue;
     Context mContext;
     Paint mPaint;
-    Path mPath;
     RectF mCircleRec;
+    private final int mColorPrimary;
+    private final int mColorPrimaryLight;
+    private float mCenter;
+    private float mCircleRadius;
+    // Animates a fraction from 0 to 1, reused for every value change
+    private final ValueAnimator mValueAnimator;
 
     public WaterLevelView(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -32,42 +49,78 @@ public class WaterLevelView extends View {
                 0, 0
         );
 
-        mRadius = attrArray.getDimension(R.styleable.CircleMeter_radius, 50f);
-        mValue = attrArray.getInteger(R.styleable.CircleMeter_value, 100);
+        try {
+            mRadius = attrArray.getDimension(R.styleable.CircleMeter_radius, 50f);
+            mValue = attrArray.getInteger(R.styleable.CircleMeter_value, 100);
+        } finally {
+            attrArray.recycle();
+        }
+        mDrawnValue = mValue;
         mStrokeWidth = mRadius / 20;
 
+        mColorPrimary = ContextCompat.getColor(context, R.color.dark_blue);
+        mColorPrimaryLight = ContextCompat.getColor(context, R.color.light_blue);
+
         mPaint = new Paint();
         mPaint.setStyle(Paint.Style.STROKE);
         mPaint.setStrokeWidth(mStrokeWidth);
         mPaint.setAntiAlias(true);
 
-        mPath = new Path();
         mCircleRec = new RectF();
+        updateGeometry();
+
+        mValueAnimator = ValueAnimator.ofFloat(0f, 1f);
+        mValueAnimator.setDuration(VALUE_ANIMATION_MILLIS);
+        mValueAnimator.setInterpolator(new DecelerateInterpolator());
+        mValueAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                // The fraction is a primitive, unlike getAnimatedValue()
+                float fraction = animation.getAnimatedFraction();
+                mDrawnValue = mAnimationStartValue + (mValue - mAnimationStartValue) * fraction;
+                invalidate();
+            }
+        });
+    }
+
+    /**
+     * Computes the meter's circle, which is drawn at the top left of the view
+     */
+    private void updateGeometry() {
+        mCenter = mRadius + mStrokeWidth / 2;
+        mCircleRadius = mRadius - mStrokeWidth / 2;
         mCircleRec.set(mStrokeWidth, mStrokeWidth, 2 * mRadius, 2 * mRadius);
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateGeometry();
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        int colorPrimary = ContextCompat.getColor(mContext, R.color.dark_blue);
-        int colorPrimaryLight = ContextCompat.getColor(mContext, R.color.light_blue);
-
-        mPaint.setColor(colorPrimaryLight);
-        drawCircle(canvas, mPaint, 0, 360);
 
-        mPaint.setColor(colorPrimary);
-        drawCircle(canvas, mPaint, 270, 360f * mValue / 100);
+        mPaint.setColor(mColorPrimaryLight);
+        canvas.drawCircle(mCenter, mCenter, mCircleRadius, mPaint);
 
+        mPaint.setColor(mColorPrimary);
+        float sweep = 360f * mDrawnValue / 100;
+        if (sweep >= 360) {
+            canvas.drawCircle(mCenter, mCenter, mCircleRadius, mPaint);
+        } else if (sweep > 0) {
+            canvas.drawArc(mCircleRec, 270, sweep, false, mPaint);
+        }
     }
 
-    public void drawCircle(Canvas canvas, Paint paint, float start, float sweep) {
-        mPath.reset();
-        if (sweep == 360) {
-            mPath.addCircle(mRadius + mStrokeWidth / 2, mRadius + mStrokeWidth / 2, mRadius - mStrokeWidth / 2, Path.Direction.CCW);
-        } else if (sweep > 0) {
-            mPath.arcTo(mCircleRec, start, sweep, false);
+    @Override
+    protected void onDetachedFromWindow() {
+        // Don't keep animating, and referencing this view, once it's gone
+        if (mValueAnimator.isRunning()) {
+            mValueAnimator.end();
         }
-        canvas.drawPath(mPath, paint);
+        super.onDetachedFromWindow();
     }
 
     @Override
@@ -104,9 +157,23 @@ public class WaterLevelView extends View {
         setMeasuredDimension(width, height);
     }
 
+    /**
+     * Sets the water level. Once the view is laid out the change is animated, starting from
+     * whatever value is drawn at the moment, so a running animation is picked up smoothly.
+     *
+     * @param value The water level in percent
+     */
     public void setValue(int value) {
+        if (value == mValue) return;
         mValue = value;
-        invalidate();
+        mValueAnimator.cancel();
+        if (ViewCompat.isLaidOut(this)) {
+            mAnimationStartValue = mDrawnValue;
+            mValueAnimator.start();
+        } else {
+            mDrawnValue = value;
+            invalidate();
+        }
     }
 
 }
\ No newline at end of file
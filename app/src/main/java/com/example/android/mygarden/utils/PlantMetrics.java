@@ -0,0 +1,175 @@
+package com.example.android.mygarden.utils;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.os.Bundle;
+import android.support.v4.os.TraceCompat;
+
+import com.example.android.mygarden.provider.PlantContract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process counters and latency histograms of the app's hot paths. Timed sections are
+ * also emitted as trace sections, so they show up in systrace and in the profilers.
+ * <p>
+ * Metrics are kept for the lifetime of the process and are read through the provider's
+ * METHOD_METRICS call. All methods are thread-safe.
+ */
+public final class PlantMetrics {
+
+    // Latencies are counted in buckets of powers of two microseconds: bucket 0 holds 0 us,
+    // bucket i holds [2^(i-1), 2^i) us, and the last bucket everything above ~16 s
+    private static final int BUCKET_COUNT = 26;
+
+    private static final ConcurrentHashMap<String, Metric> sMetrics = new ConcurrentHashMap<>();
+
+    private PlantMetrics() {
+    }
+
+    /**
+     * Starts a timed section, to be ended by endSection on the same thread
+     *
+     * @param name The section's name, at most 127 characters
+     * @return The start time to pass to endSection
+     */
+    public static long beginSection(String name) {
+        TraceCompat.beginSection(name);
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends the innermost timed section of this thread and records its latency
+     *
+     * @param name       The section's name, as passed to beginSection
+     * @param startNanos The start time returned by beginSection
+     */
+    public static void endSection(String name, long startNanos) {
+        long micros = (System.nanoTime() - startNanos) / 1000;
+        TraceCompat.endSection();
+        getMetric(name).record(micros);
+    }
+
+    /**
+     * Adds to a counter
+     *
+     * @param name  The counter's name
+     * @param delta The amount to add
+     */
+    public static void increment(String name, long delta) {
+        getMetric(name).add(delta);
+    }
+
+    /**
+     * Returns all metrics, each as a Bundle under its name. Counters have KEY_METRIC_COUNT,
+     * timed sections also have the KEY_METRIC_*_MICROS latencies.
+     */
+    public static Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        for (Metric metric : sMetrics.values()) {
+            bundle.putBundle(metric.mName, metric.toBundle());
+        }
+        return bundle;
+    }
+
+    /**
+     * Formats metrics returned by toBundle as one line per metric, sorted by name
+     */
+    public static String format(Bundle metrics) {
+        ArrayList<String> names = new ArrayList<>(metrics.keySet());
+        Collections.sort(names);
+        StringBuilder text = new StringBuilder();
+        for (String name : names) {
+            Bundle metric = metrics.getBundle(name);
+            if (metric == null) continue;
+            if (text.length() > 0) text.append('\n');
+            text.append(name).append(": ").append(metric.getLong(PlantContract.KEY_METRIC_COUNT));
+            if (metric.containsKey(PlantContract.KEY_METRIC_P50_MICROS)) {
+                text.append(String.format(Locale.US, "  p50 %.1f ms  p99 %.1f ms  max %.1f ms",
+                        metric.getLong(PlantContract.KEY_METRIC_P50_MICROS) / 1000f,
+                        metric.getLong(PlantContract.KEY_METRIC_P99_MICROS) / 1000f,
+                        metric.getLong(PlantContract.KEY_METRIC_MAX_MICROS) / 1000f));
+            }
+        }
+        return text.toString();
+    }
+
+    private static Metric getMetric(String name) {
+        Metric metric = sMetrics.get(name);
+        if (metric == null) {
+            Metric newMetric = new Metric(name);
+            metric = sMetrics.putIfAbsent(name, newMetric);
+            if (metric == null) metric = newMetric;
+        }
+        return metric;
+    }
+
+    private static class Metric {
+        final String mName;
+        private long mCount;
+        // Only allocated once a latency is recorded, so counters stay small
+        private long[] mBuckets;
+        private long mTotalMicros;
+        private long mMaxMicros;
+
+        Metric(String name) {
+            mName = name;
+        }
+
+        synchronized void add(long delta) {
+            mCount += delta;
+        }
+
+        synchronized void record(long micros) {
+            if (mBuckets == null) mBuckets = new long[BUCKET_COUNT];
+            int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+            mBuckets[bucket]++;
+            mCount++;
+            mTotalMicros += micros;
+            mMaxMicros = Math.max(mMaxMicros, micros);
+        }
+
+        synchronized Bundle toBundle() {
+            Bundle bundle = new Bundle();
+            bundle.putLong(PlantContract.KEY_METRIC_COUNT, mCount);
+            if (mBuckets != null) {
+                bundle.putLong(PlantContract.KEY_METRIC_TOTAL_MICROS, mTotalMicros);
+                bundle.putLong(PlantContract.KEY_METRIC_P50_MICROS, getPercentile(0.5));
+                bundle.putLong(PlantContract.KEY_METRIC_P99_MICROS, getPercentile(0.99));
+                bundle.putLong(PlantContract.KEY_METRIC_MAX_MICROS, mMaxMicros);
+            }
+            return bundle;
+        }
+
+        /**
+         * Returns the upper bound of the bucket holding the given percentile, which
+         * overestimates it by less than a factor of two
+         */
+        private long getPercentile(double percentile) {
+            long rank = (long) Math.ceil(percentile * mCount);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank) return Math.min(mMaxMicros, (1L << i) - 1);
+            }
+            return mMaxMicros;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.android.mygarden.utils;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.database.Cursor;
+import android.os.Bundle;
+
+import com.example.android.mygarden.provider.PlantContract;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+
+/**
+ * Decodes PlantSnapshots from the provider's cursors and bundles
+ */
+public final class PlantSnapshots {
+
+    // The columns a snapshot is decoded from. Cursors may have others, but these must be there.
+    public static final String[] PROJECTION = {
+            PlantEntry._ID,
+            PlantEntry.COLUMN_PLANT_TYPE,
+            PlantEntry.COLUMN_CREATION_TIME,
+            PlantEntry.COLUMN_LAST_WATERED_TIME
+    };
+
+    private PlantSnapshots() {
+    }
+
+    /**
+     * Decodes all rows of a cursor, in cursor order. The cursor isn't closed.
+     *
+     * @param cursor  A cursor with the PROJECTION columns, or null for an empty snapshot
+     * @param timeNow The time to evaluate the plants at
+     * @return The snapshot
+     */
+    public static PlantSnapshot fromCursor(final Cursor cursor, long timeNow) {
+        if (cursor == null || cursor.getCount() == 0) return PlantSnapshot.EMPTY;
+        return PlantSnapshot.decode(new PlantSnapshot.Rows() {
+                    @Override
+                    public int getCount() {
+                        return cursor.getCount();
+                    }
+
+                    @Override
+                    public boolean moveToPosition(int position) {
+                        return cursor.moveToPosition(position);
+                    }
+
+                    @Override
+                    public long getLong(int column) {
+                        return cursor.getLong(column);
+                    }
+
+                    @Override
+                    public int getInt(int column) {
+                        return cursor.getInt(column);
+                    }
+                },
+                cursor.getColumnIndexOrThrow(PlantEntry._ID),
+                cursor.getColumnIndexOrThrow(PlantEntry.COLUMN_PLANT_TYPE),
+                cursor.getColumnIndexOrThrow(PlantEntry.COLUMN_CREATION_TIME),
+                cursor.getColumnIndexOrThrow(PlantEntry.COLUMN_LAST_WATERED_TIME),
+                timeNow);
+    }
+
+    /**
+     * Decodes a single plant returned by the provider's call() methods
+     *
+     * @param plant   A bundle with the PlantContract KEY_ plant values, without a
+     *                KEY_PLANT_ID if there is no plant
+     * @param timeNow The time to evaluate the plant at
+     * @return A snapshot of that plant, or an empty one
+     */
+    public static PlantSnapshot fromBundle(Bundle plant, long timeNow) {
+        if (!plant.containsKey(PlantContract.KEY_PLANT_ID)) return PlantSnapshot.EMPTY;
+        return PlantSnapshot.of(
+                new long[]{plant.getLong(PlantContract.KEY_PLANT_ID)},
+                new int[]{plant.getInt(PlantContract.KEY_PLANT_TYPE)},
+                new long[]{plant.getLong(PlantContract.KEY_CREATION_TIME)},
+                new long[]{plant.getLong(PlantContract.KEY_LAST_WATERED_TIME)},
+                timeNow);
+    }
+}
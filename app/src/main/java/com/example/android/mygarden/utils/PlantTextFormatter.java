@@ -0,0 +1,98 @@
+package com.example.android.mygarden.utils;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.Context;
+import android.widget.TextView;
+
+import com.example.android.mygarden.R;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Formats plant IDs and display ages into TextViews without allocating once set up.
+ * The age units and digits are resolved for the context's locale when the formatter is
+ * created, so a formatter should live no longer than the activity that created it.
+ * <p>
+ * Numbers are written into char buffers that the TextView keeps a reference to, so every
+ * TextView needs its own buffer, created with {@link #newNumberBuffer()}.
+ */
+public class PlantTextFormatter {
+
+    // Long enough for any long value, including the sign
+    private static final int NUMBER_BUFFER_SIZE = 20;
+
+    // Indexed by PlantUtils.AGE_UNIT_DAYS, AGE_UNIT_HOURS and AGE_UNIT_MINUTES
+    private final String[] mAgeUnits;
+    private final char mZeroDigit;
+    private final char mMinusSign;
+
+    public PlantTextFormatter(Context context) {
+        mAgeUnits = new String[]{
+                context.getString(R.string.days),
+                context.getString(R.string.hours),
+                context.getString(R.string.minutes)
+        };
+        Locale locale = context.getResources().getConfiguration().locale;
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+        mZeroDigit = symbols.getZeroDigit();
+        mMinusSign = symbols.getMinusSign();
+    }
+
+    /**
+     * Returns a buffer for one TextView to be used with {@link #setNumber}
+     */
+    public static char[] newNumberBuffer() {
+        return new char[NUMBER_BUFFER_SIZE];
+    }
+
+    /**
+     * Sets the text of a TextView to a number, using the buffer that belongs to that TextView
+     *
+     * @param textView The TextView
+     * @param buffer   The TextView's buffer, created with newNumberBuffer
+     * @param value    The number to display
+     */
+    public void setNumber(TextView textView, char[] buffer, long value) {
+        // Write the digits backwards from the end of the buffer
+        int start = buffer.length;
+        long remaining = value;
+        do {
+            buffer[--start] = (char) (mZeroDigit + Math.abs(remaining % 10));
+            remaining /= 10;
+        } while (remaining != 0);
+        if (value < 0) buffer[--start] = mMinusSign;
+        textView.setText(buffer, start, buffer.length - start);
+    }
+
+    /**
+     * Sets the value and unit TextViews of a display age (days, hours or minutes). The unit
+     * is determined once and used for both.
+     *
+     * @param valueView    The TextView for the value
+     * @param valueBuffer  The value TextView's buffer, created with newNumberBuffer
+     * @param unitView     The TextView for the unit
+     * @param milliSeconds The age in milli seconds
+     */
+    public void setDisplayAge(TextView valueView, char[] valueBuffer, TextView unitView,
+                              long milliSeconds) {
+        int unit = PlantUtils.getDisplayAgeUnitIndex(milliSeconds);
+        setNumber(valueView, valueBuffer, PlantUtils.getDisplayAgeInt(milliSeconds, unit));
+        unitView.setText(mAgeUnits[unit]);
+    }
+}
@@ -16,7 +16,9 @@ package com.example.android.mygarden.utils;
 * limitations under the License.
 */
 
+import android.content.ComponentCallbacks;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 
@@ -24,16 +26,13 @@ import com.example.android.mygarden.R;
 
 public class PlantUtils {
 
-    private static final long MINUTE_MILLISECONDS = 1000 * 60;
-    private static final long HOUR_MILLISECONDS = MINUTE_MILLISECONDS * 60;
-    private static final long DAY_MILLISECONDS = HOUR_MILLISECONDS * 24;
-
-    public static final long MIN_AGE_BETWEEN_WATER = HOUR_MILLISECONDS * 2; // can water every 2 hours
-    static final long DANGER_AGE_WITHOUT_WATER = HOUR_MILLISECONDS * 6; // in danger after 6 hours
-    public static final long MAX_AGE_WITHOUT_WATER = HOUR_MILLISECONDS * 12; // plants die after 12 hours
-    static final long TINY_AGE = DAY_MILLISECONDS * 0; // plants start tiny
-    static final long JUVENILE_AGE = DAY_MILLISECONDS * 1; // 1 day old
-    static final long FULLY_GROWN_AGE = DAY_MILLISECONDS * 2; // 2 days old
+    // The lifecycle thresholds are defined in PlantLifecycle
+    public static final long MIN_AGE_BETWEEN_WATER = PlantLifecycle.MIN_AGE_BETWEEN_WATER;
+    static final long DANGER_AGE_WITHOUT_WATER = PlantLifecycle.DANGER_AGE_WITHOUT_WATER;
+    public static final long MAX_AGE_WITHOUT_WATER = PlantLifecycle.MAX_AGE_WITHOUT_WATER;
+    static final long TINY_AGE = PlantLifecycle.TINY_AGE;
+    static final long JUVENILE_AGE = PlantLifecycle.JUVENILE_AGE;
+    static final long FULLY_GROWN_AGE = PlantLifecycle.FULLY_GROWN_AGE;
 
 
     public enum PlantStatus {ALIVE, DYING, DEAD}
@@ -44,6 +43,31 @@ public class PlantUtils {
 
     ;
 
+    // Image name suffixes, indexed by PlantStatus and PlantSize ordinals
+    private static final String[] STATUS_SUFFIXES = {"", "_danger", "_dead"};
+    private static final String[] SIZE_SUFFIXES = {"_1", "_2", "_3"};
+
+    // Display units of getDisplayAgeUnitIndex, defined in PlantAge
+    public static final int AGE_UNIT_DAYS = PlantAge.AGE_UNIT_DAYS;
+    public static final int AGE_UNIT_HOURS = PlantAge.AGE_UNIT_HOURS;
+    public static final int AGE_UNIT_MINUTES = PlantAge.AGE_UNIT_MINUTES;
+
+    // Image resources and display names of every plant type. Built once from the plant_types
+    // array, and rebuilt after a configuration change
+    private static volatile PlantTypes sPlantTypes;
+    private static boolean sConfigCallbacksRegistered;
+
+    private static final ComponentCallbacks sConfigCallbacks = new ComponentCallbacks() {
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            sPlantTypes = null;
+        }
+
+        @Override
+        public void onLowMemory() {
+        }
+    };
+
     /**
      * Returns the corresponding image resource of the plant given the plant's age and
      * time since it was last watered
@@ -53,21 +77,8 @@ public class PlantUtils {
      * @return Image Resource to the correct plant image
      */
     public static int getPlantImageRes(Context context, long plantAge, long waterAge, int type) {
-        //check if plant is dead first
-        PlantStatus status = PlantStatus.ALIVE;
-        if (waterAge > MAX_AGE_WITHOUT_WATER) status = PlantStatus.DEAD;
-        else if (waterAge > DANGER_AGE_WITHOUT_WATER) status = PlantStatus.DYING;
-
-        //Update image if old enough
-        if (plantAge > FULLY_GROWN_AGE) {
-            return getPlantImgRes(context, type, status, PlantSize.FULLY_GROWN);
-        } else if (plantAge > JUVENILE_AGE) {
-            return getPlantImgRes(context, type, status, PlantSize.JUVENILE);
-        } else if (plantAge > TINY_AGE) {
-            return getPlantImgRes(context, type, status, PlantSize.TINY);
-        } else {
-            return R.drawable.empty_pot;
-        }
+        return getPlantImgRes(context, type,
+                PlantLifecycle.getStatus(waterAge), PlantLifecycle.getSize(plantAge));
     }
 
     /**
@@ -81,15 +92,98 @@ public class PlantUtils {
      * @return Image Resource to the correct plant image
      */
     public static int getPlantImgRes(Context context, int type, PlantStatus status, PlantSize size) {
-        Resources res = context.getResources();
+        return getPlantImgRes(context, type, status.ordinal(), size.ordinal());
+    }
+
+    /**
+     * Returns the corresponding image resource of the plant given the plant's type, and the
+     * status and size evaluated by PlantLifecycle
+     *
+     * @param context The context
+     * @param type    The plant type (starts from 0 and corresponds to the index to the item in arrays.xml)
+     * @param status  The PlantLifecycle status
+     * @param size    The PlantLifecycle size
+     * @return Image Resource to the correct plant image
+     */
+    public static int getPlantImgRes(Context context, int type, int status, int size) {
+        PlantTypes plantTypes = getPlantTypes(context);
+        int index = PlantImages.getImageIndex(plantTypes.mNames.length, type, status, size);
+        if (index < 0) return 0;
+        return plantTypes.mImgRes[index];
+    }
+
+    private static PlantTypes getPlantTypes(Context context) {
+        PlantTypes plantTypes = sPlantTypes;
+        if (plantTypes == null) plantTypes = loadPlantTypes(context);
+        return plantTypes;
+    }
+
+    /**
+     * Resolves the image resources and display names of every plant type in one go, so that
+     * getPlantImgRes and getPlantTypeName don't need to look resources up by name
+     *
+     * @param context The context
+     * @return The image resources and display names
+     */
+    private static synchronized PlantTypes loadPlantTypes(Context context) {
+        if (sPlantTypes != null) return sPlantTypes;
+
+        Context appContext = context.getApplicationContext();
+        if (!sConfigCallbacksRegistered) {
+            // Resources may resolve differently after a configuration change
+            appContext.registerComponentCallbacks(sConfigCallbacks);
+            sConfigCallbacksRegistered = true;
+        }
+
+        Resources res = appContext.getResources();
+        String packageName = appContext.getPackageName();
         TypedArray plantTypes = res.obtainTypedArray(R.array.plant_types);
-        String resName = plantTypes.getString(type);
-        if (status == PlantStatus.DYING) resName += "_danger";
-        else if (status == PlantStatus.DEAD) resName += "_dead";
-        if (size == PlantSize.TINY) resName += "_1";
-        else if (size == PlantSize.JUVENILE) resName += "_2";
-        else if (size == PlantSize.FULLY_GROWN) resName += "_3";
-        return context.getResources().getIdentifier(resName, "drawable", context.getPackageName());
+        int typeCount = plantTypes.length();
+        int[] plantImgRes = new int[PlantImages.getImageCount(typeCount)];
+        String[] plantTypeNames = new String[plantTypes.length()];
+        for (int type = 0; type < plantTypes.length(); type++) {
+            String typeName = plantTypes.getString(type);
+            int nameResId = res.getIdentifier(typeName, "string", packageName);
+            try {
+                plantTypeNames[type] = res.getString(nameResId);
+            } catch (Resources.NotFoundException ex) {
+                plantTypeNames[type] = res.getString(R.string.unknown_type);
+            }
+            for (int status = 0; status < STATUS_SUFFIXES.length; status++) {
+                for (int size = 0; size < SIZE_SUFFIXES.length; size++) {
+                    String resName = typeName + STATUS_SUFFIXES[status] + SIZE_SUFFIXES[size];
+                    plantImgRes[PlantImages.getImageIndex(typeCount, type, status, size)] =
+                            res.getIdentifier(resName, "drawable", packageName);
+                }
+            }
+        }
+        plantTypes.recycle();
+        // Plants that haven't sprouted yet all look the same
+        plantImgRes[PlantImages.getImageIndex(typeCount, 0, 0, PlantLifecycle.SIZE_EMPTY)] =
+                R.drawable.empty_pot;
+
+        sPlantTypes = new PlantTypes(plantImgRes, plantTypeNames);
+        return sPlantTypes;
+    }
+
+    private static class PlantTypes {
+        final int[] mImgRes;
+        final String[] mNames;
+
+        PlantTypes(int[] imgRes, String[] names) {
+            mImgRes = imgRes;
+            mNames = names;
+        }
+    }
+
+    /**
+     * Returns the number of plant types listed in arrays.xml
+     *
+     * @param context The context
+     * @return The number of plant types
+     */
+    public static int getPlantTypeCount(Context context) {
+        return getPlantTypes(context).mNames.length;
     }
 
     /**
@@ -100,15 +194,11 @@ public class PlantUtils {
      * @return The plant type display name
      */
     public static String getPlantTypeName(Context context, int type) {
-        Resources res = context.getResources();
-        TypedArray plantTypes = res.obtainTypedArray(R.array.plant_types);
-        String resName = plantTypes.getString(type);
-        int resId = context.getResources().getIdentifier(resName, "string", context.getPackageName());
-        try {
-            return context.getResources().getString(resId);
-        } catch (Resources.NotFoundException ex) {
+        String[] plantTypeNames = getPlantTypes(context).mNames;
+        if (type < 0 || type >= plantTypeNames.length) {
             return context.getResources().getString(R.string.unknown_type);
         }
+        return plantTypeNames[type];
     }
 
     /**
@@ -118,11 +208,28 @@ public class PlantUtils {
      * @return The value of either days, hours or minutes
      */
     public static int getDisplayAgeInt(long milliSeconds) {
-        int days = (int) (milliSeconds / DAY_MILLISECONDS);
-        if (days >= 1) return days;
-        int hours = (int) (milliSeconds / HOUR_MILLISECONDS);
-        if (hours >= 1) return hours;
-        return (int) (milliSeconds / MINUTE_MILLISECONDS);
+        return PlantAge.getDisplayAgeInt(milliSeconds);
+    }
+
+    /**
+     * Converts the age in milli seconds to a value in the given display unit
+     *
+     * @param milliSeconds The age in milli seconds
+     * @param unit         The display unit returned by getDisplayAgeUnitIndex
+     * @return The value of either days, hours or minutes
+     */
+    public static int getDisplayAgeInt(long milliSeconds, int unit) {
+        return PlantAge.getDisplayAgeInt(milliSeconds, unit);
+    }
+
+    /**
+     * Returns the unit the age in milli seconds is displayed in
+     *
+     * @param milliSeconds The age in milli seconds
+     * @return One of AGE_UNIT_DAYS, AGE_UNIT_HOURS or AGE_UNIT_MINUTES
+     */
+    public static int getDisplayAgeUnitIndex(long milliSeconds) {
+        return PlantAge.getDisplayAgeUnitIndex(milliSeconds);
     }
 
     /**
@@ -133,10 +240,13 @@ public class PlantUtils {
      * @return The unit of either days, hours or minutes
      */
     public static String getDisplayAgeUnit(Context context, long milliSeconds) {
-        int days = (int) (milliSeconds / DAY_MILLISECONDS);
-        if (days >= 1) return context.getString(R.string.days);
-        int hours = (int) (milliSeconds / HOUR_MILLISECONDS);
-        if (hours >= 1) return context.getString(R.string.hours);
-        return context.getString(R.string.minutes);
+        switch (getDisplayAgeUnitIndex(milliSeconds)) {
+            case AGE_UNIT_DAYS:
+                return context.getString(R.string.days);
+            case AGE_UNIT_HOURS:
+                return context.getString(R.string.hours);
+            default:
+                return context.getString(R.string.minutes);
+        }
     }
 }
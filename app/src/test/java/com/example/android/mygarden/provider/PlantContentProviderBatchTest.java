@@ -0,0 +1,176 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that bulkInsert and applyBatch write a batch of plants in a single transaction with
+ * a single notification. Their speed is measured by PlantContentProviderLoadTest.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class PlantContentProviderBatchTest {
+
+    private static final int PLANT_COUNT = 500;
+    private static final long TIME_NOW = 1500000000000L;
+
+    private PlantContentProvider mProvider;
+    private ShadowContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.buildContentProvider(PlantContentProvider.class)
+                .create(PlantContract.AUTHORITY).get();
+        mResolver = Shadows.shadowOf(RuntimeEnvironment.application.getContentResolver());
+        mProvider.insert(PlantEntry.CONTENT_URI, newPlant(0));
+    }
+
+    @Test
+    public void bulkInsert_insertsEveryPlant() {
+        assertEquals(PLANT_COUNT, mProvider.bulkInsert(PlantEntry.CONTENT_URI, newPlants()));
+        assertEquals(1 + PLANT_COUNT, countPlants());
+    }
+
+    @Test
+    public void applyBatch_insertsEveryPlant() throws Exception {
+        assertEquals(PLANT_COUNT, mProvider.applyBatch(newInsertOperations()).length);
+        assertEquals(1 + PLANT_COUNT, countPlants());
+    }
+
+    @Test
+    public void bulkInsert_insertsNothingIfAPlantFails() {
+        ContentValues[] plants = newPlants();
+        plants[PLANT_COUNT - 1] = new ContentValues();
+        int notified = mResolver.getNotifiedUris().size();
+        try {
+            mProvider.bulkInsert(PlantEntry.CONTENT_URI, plants);
+            fail("Inserted a plant without columns");
+        } catch (SQLException expected) {
+            // The whole batch is rolled back
+        }
+        assertEquals(1, countPlants());
+        assertEquals(notified, mResolver.getNotifiedUris().size());
+    }
+
+    @Test
+    public void applyBatch_appliesNothingIfAnOperationFails() throws Exception {
+        ArrayList<ContentProviderOperation> operations = newInsertOperations();
+        operations.add(ContentProviderOperation.newInsert(PlantEntry.CONTENT_URI)
+                .withValues(new ContentValues()).build());
+        int notified = mResolver.getNotifiedUris().size();
+        try {
+            mProvider.applyBatch(operations);
+            fail("Inserted a plant without columns");
+        } catch (SQLException expected) {
+            // The whole batch is rolled back
+        }
+        assertEquals(1, countPlants());
+        assertEquals(notified, mResolver.getNotifiedUris().size());
+    }
+
+    @Test
+    public void singleInserts_notifyOncePerPlant() {
+        int notified = mResolver.getNotifiedUris().size();
+        insertSingly();
+        assertEquals(notified + PLANT_COUNT, mResolver.getNotifiedUris().size());
+    }
+
+    @Test
+    public void bulkInsert_notifiesOnce() {
+        int notified = mResolver.getNotifiedUris().size();
+        mProvider.bulkInsert(PlantEntry.CONTENT_URI, newPlants());
+        assertNotifiedOnce(notified);
+    }
+
+    @Test
+    public void applyBatch_notifiesOnce() throws Exception {
+        int notified = mResolver.getNotifiedUris().size();
+        mProvider.applyBatch(newInsertOperations());
+        assertNotifiedOnce(notified);
+    }
+
+    private void assertNotifiedOnce(int notifiedBefore) {
+        List<ShadowContentResolver.NotifiedUri> notifiedUris = mResolver.getNotifiedUris();
+        assertEquals(notifiedBefore + 1, notifiedUris.size());
+        assertEquals(PlantEntry.CONTENT_URI, notifiedUris.get(notifiedBefore).uri);
+    }
+
+    private void insertSingly() {
+        for (int i = 0; i < PLANT_COUNT; i++) {
+            mProvider.insert(PlantEntry.CONTENT_URI, newPlant(i));
+        }
+    }
+
+    private static ContentValues[] newPlants() {
+        ContentValues[] plants = new ContentValues[PLANT_COUNT];
+        for (int i = 0; i < PLANT_COUNT; i++) {
+            plants[i] = newPlant(i);
+        }
+        return plants;
+    }
+
+    private static ArrayList<ContentProviderOperation> newInsertOperations() {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = 0; i < PLANT_COUNT; i++) {
+            operations.add(ContentProviderOperation.newInsert(PlantEntry.CONTENT_URI)
+                    .withValues(newPlant(i)).build());
+        }
+        return operations;
+    }
+
+    private static ContentValues newPlant(int i) {
+        ContentValues values = new ContentValues();
+        values.put(PlantEntry.COLUMN_PLANT_TYPE, i % 2);
+        values.put(PlantEntry.COLUMN_CREATION_TIME, TIME_NOW - i);
+        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, TIME_NOW - i);
+        return values;
+    }
+
+    private int countPlants() {
+        Cursor cursor = mProvider.query(PlantEntry.CONTENT_URI,
+                new String[]{"COUNT(*)"}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.utils.PlantLifecycle;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the throughput and latency of a real PlantContentProvider and PlantDbHelper on
+ * Robolectric's SQLite, which runs the native SQLite library. Every operation is timed
+ * individually at several garden sizes, and the results are written as JSON to the directory
+ * given by the plantLoadTest.reportDir system property, one file per garden size, so runs can
+ * be compared across commits. The sorted queries are then repeated without the time indexes.
+ * <p>
+ * Only correctness is asserted; timings depend on the machine and are reported, not checked.
+ * The test takes minutes, so it only runs when the plantLoadTest.enabled system property is
+ * true, which the build sets when run with -PplantLoadTest.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class PlantContentProviderLoadTest {
+
+    // Number of timed operations of each kind, per garden size
+    private static final int OPERATION_COUNT = 1000;
+    // Number of timed sorted queries once the indexes are dropped, each scans the whole garden
+    private static final int UNINDEXED_OPERATION_COUNT = 100;
+    // Rows per bulkInsert while filling the garden
+    private static final int FILL_BATCH_SIZE = 1000;
+    private static final int PAGE_SIZE = 100;
+    // Share of guarded waterings in the mixed workload, the rest are sorted page queries
+    private static final double MIXED_WATER_RATIO = 0.8;
+
+    private static final long TIME_NOW = 1500000000000L;
+
+    private PlantContentProvider mProvider;
+    private Random mRandom;
+    private long mMaxId;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("plantLoadTest.enabled"));
+        mProvider = Robolectric.buildContentProvider(PlantContentProvider.class)
+                .create(PlantContract.AUTHORITY).get();
+        mRandom = new Random(42);
+    }
+
+    @Test
+    public void garden1k() throws Exception {
+        runLoad(1000);
+    }
+
+    @Test
+    public void garden10k() throws Exception {
+        runLoad(10000);
+    }
+
+    @Test
+    public void garden100k() throws Exception {
+        runLoad(100000);
+    }
+
+    private void runLoad(int gardenSize) throws IOException, JSONException {
+        List<OperationStats> results = new ArrayList<>();
+        results.add(fill(gardenSize));
+        assertEquals(gardenSize, countPlants());
+
+        results.add(measureInserts());
+        results.add(measureQueriesById());
+        results.add(measureSortedPageQueries());
+        results.add(measureThirstiestQueries());
+        results.add(measureGuardedWaterings());
+        results.add(measureMixedWorkload());
+        results.add(measureDeletes());
+        assertEquals(gardenSize, countPlants());
+
+        // The same sorted queries without the time indexes, to show what they're worth
+        dropTimeIndexes();
+        results.add(measureUnindexedSortedPageQueries());
+        results.add(measureUnindexedThirstiestQueries());
+
+        writeReport(gardenSize, results);
+    }
+
+    /**
+     * Fills the garden with bulk inserts; each sample is one batch of FILL_BATCH_SIZE rows
+     */
+    private OperationStats fill(int gardenSize) {
+        OperationStats stats = new OperationStats("bulkInsert", FILL_BATCH_SIZE);
+        for (int start = 0; start < gardenSize; start += FILL_BATCH_SIZE) {
+            int count = Math.min(FILL_BATCH_SIZE, gardenSize - start);
+            ContentValues[] batch = new ContentValues[count];
+            for (int i = 0; i < count; i++) {
+                batch[i] = newPlant();
+            }
+            long startTime = System.nanoTime();
+            int inserted = mProvider.bulkInsert(PlantEntry.CONTENT_URI, batch);
+            stats.add(System.nanoTime() - startTime);
+            assertEquals(count, inserted);
+        }
+        mMaxId = gardenSize;
+        return stats;
+    }
+
+    private OperationStats measureInserts() {
+        OperationStats stats = new OperationStats("insert", 1);
+        for (int i = 0; i < OPERATION_COUNT; i++) {
+            ContentValues plant = newPlant();
+            long startTime = System.nanoTime();
+            Uri uri = mProvider.insert(PlantEntry.CONTENT_URI, plant);
+            stats.add(System.nanoTime() - startTime);
+            mMaxId = Math.max(mMaxId, ContentUris.parseId(uri));
+        }
+        return stats;
+    }
+
+    private OperationStats measureQueriesById() {
+        OperationStats stats = new OperationStats("queryById", 1);
+        for (int i = 0; i < OPERATION_COUNT; i++) {
+            Uri uri = ContentUris.withAppendedId(PlantEntry.CONTENT_URI, randomId());
+            long startTime = System.nanoTime();
+            Cursor cursor = mProvider.query(uri, null, null, null, null);
+            assertTrue(cursor.moveToFirst());
+            cursor.close();
+            stats.add(System.nanoTime() - startTime);
+        }
+        return stats;
+    }
+
+    private OperationStats measureSortedPageQueries() {
+        OperationStats stats = new OperationStats("sortedPageQuery", 1);
+        for (int i = 0; i < OPERATION_COUNT; i++) {
+            stats.add(timeSortedPageQuery());
+        }
+        return stats;
+    }
+
+    /**
+     * Reads a full page of plants sorted by creation time, starting at a random plant
+     */
+    private long timeSortedPageQuery() {
+        long afterKey = TIME_NOW - (long) (mRandom.nextDouble() * 2 * PlantLifecycle.FULLY_GROWN_AGE);
+        Uri uri = PlantEntry.buildPageUri(PlantEntry.COLUMN_CREATION_TIME, afterKey, 0, PAGE_SIZE);
+        long startTime = System.nanoTime();
+        Cursor cursor = mProvider.query(uri, null, null, null, null);
+        while (cursor.moveToNext()) {
+            cursor.getLong(0);
+        }
+        cursor.close();
+        return System.nanoTime() - startTime;
+    }
+
+    private OperationStats measureThirstiestQueries() {
+        OperationStats stats = new OperationStats("thirstiestQuery", 1);
+        for (int i = 0; i < OPERATION_COUNT; i++) {
+            stats.add(timeThirstiestQuery());
+        }
+        return stats;
+    }
+
+    private long timeThirstiestQuery() {
+        long startTime = System.nanoTime();
+        Cursor cursor = mProvider.query(PlantEntry.CONTENT_THIRSTIEST_URI, null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        cursor.close();
+        return System.nanoTime() - startTime;
+    }
+
+    private OperationStats measureUnindexedSortedPageQueries() {
+        OperationStats stats = new OperationStats("sortedPageQueryUnindexed", 1);
+        for (int i = 0; i < UNINDEXED_OPERATION_COUNT; i++) {
+            stats.add(timeSortedPageQuery());
+        }
+        return stats;
+    }
+
+    private OperationStats measureUnindexedThirstiestQueries() {
+        OperationStats stats = new OperationStats("thirstiestQueryUnindexed", 1);
+        for (int i = 0; i < UNINDEXED_OPERATION_COUNT; i++) {
+            stats.add(timeThirstiestQuery());
+        }
+        return stats;
+    }
+
+    /**
+     * Drops the indexes on the watering and creation times, so that sorted queries have to
+     * scan and sort the whole garden
+     */
+    private static void dropTimeIndexes() {
+        PlantDbHelper dbHelper = new PlantDbHelper(RuntimeEnvironment.application);
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            db.execSQL("DROP INDEX " + PlantEntry.INDEX_LAST_WATERED_TIME);
+            db.execSQL("DROP INDEX " + PlantEntry.INDEX_CREATION_TIME);
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    private OperationStats measureGuardedWaterings() {
+        OperationStats stats = new OperationStats("guardedWater", 1);
+        for (int i = 0; i < OPERATION_COUNT; i++) {
+            stats.add(timeGuardedWatering());
+        }
+        return stats;
+    }
+
+    /**
+     * Waters a random plant only if it's still alive, like PlantWateringService does
+     */
+    private long timeGuardedWatering() {
+        Uri uri = ContentUris.withAppendedId(PlantEntry.CONTENT_URI, randomId());
+        ContentValues values = new ContentValues();
+        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, TIME_NOW);
+        String[] selectionArgs = {String.valueOf(TIME_NOW - PlantLifecycle.MAX_AGE_WITHOUT_WATER)};
+        long startTime = System.nanoTime();
+        mProvider.update(uri, values, PlantEntry.COLUMN_LAST_WATERED_TIME + ">?", selectionArgs);
+        return System.nanoTime() - startTime;
+    }
+
+    private OperationStats measureMixedWorkload() {
+        OperationStats stats = new OperationStats("mixedWaterAndSortedQuery", 1);
+        for (int i = 0; i < OPERATION_COUNT; i++) {
+            stats.add(mRandom.nextDouble() < MIXED_WATER_RATIO
+                    ? timeGuardedWatering() : timeSortedPageQuery());
+        }
+        return stats;
+    }
+
+    /**
+     * Deletes as many plants as measureInserts added, so the garden ends at its initial size
+     */
+    private OperationStats measureDeletes() {
+        OperationStats stats = new OperationStats("delete", 1);
+        long[] ids = new long[OPERATION_COUNT];
+        for (int i = 0; i < OPERATION_COUNT; i++) {
+            ids[i] = mMaxId - i;
+        }
+        for (long id : ids) {
+            Uri uri = ContentUris.withAppendedId(PlantEntry.CONTENT_URI, id);
+            long startTime = System.nanoTime();
+            int deleted = mProvider.delete(uri, null, null);
+            stats.add(System.nanoTime() - startTime);
+            assertEquals(1, deleted);
+        }
+        mMaxId -= OPERATION_COUNT;
+        return stats;
+    }
+
+    /**
+     * A plant of a random type and age, spread over every lifecycle stage
+     */
+    private ContentValues newPlant() {
+        long plantAge = (long) (mRandom.nextDouble() * 2 * PlantLifecycle.FULLY_GROWN_AGE);
+        long waterAge = (long) (mRandom.nextDouble()
+                * Math.min(plantAge, 2 * PlantLifecycle.MAX_AGE_WITHOUT_WATER));
+        ContentValues values = new ContentValues();
+        values.put(PlantEntry.COLUMN_PLANT_TYPE, mRandom.nextInt(2));
+        values.put(PlantEntry.COLUMN_CREATION_TIME, TIME_NOW - plantAge);
+        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, TIME_NOW - waterAge);
+        return values;
+    }
+
+    private long randomId() {
+        return 1 + (long) (mRandom.nextDouble() * (mMaxId - OPERATION_COUNT));
+    }
+
+    private int countPlants() {
+        Cursor cursor = mProvider.query(PlantEntry.CONTENT_URI,
+                new String[]{"COUNT(*)"}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void writeReport(int gardenSize, List<OperationStats> results)
+            throws IOException, JSONException {
+        JSONArray operations = new JSONArray();
+        for (OperationStats stats : results) {
+            operations.put(stats.toJson());
+        }
+        JSONObject report = new JSONObject();
+        report.put("gardenSize", gardenSize);
+        report.put("operationCount", OPERATION_COUNT);
+        report.put("timestamp", System.currentTimeMillis());
+        report.put("operations", operations);
+
+        File reportDir = new File(System.getProperty("plantLoadTest.reportDir",
+                "build/reports/provider-load"));
+        if (!reportDir.isDirectory() && !reportDir.mkdirs()) {
+            throw new IOException("Can't create " + reportDir);
+        }
+        File reportFile = new File(reportDir, "provider-load-" + gardenSize + ".json");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8");
+        try {
+            writer.write(report.toString(2));
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * The latencies of one kind of operation. Each sample may cover several rows, e.g. a
+     * bulk insert, which the throughput accounts for.
+     */
+    private static class OperationStats {
+        private final String mName;
+        private final int mRowsPerSample;
+        private long[] mNanos = new long[OPERATION_COUNT];
+        private int mCount;
+
+        OperationStats(String name, int rowsPerSample) {
+            mName = name;
+            mRowsPerSample = rowsPerSample;
+        }
+
+        void add(long nanos) {
+            if (mCount == mNanos.length) mNanos = Arrays.copyOf(mNanos, mCount * 2);
+            mNanos[mCount++] = nanos;
+        }
+
+        JSONObject toJson() throws JSONException {
+            long[] sorted = Arrays.copyOf(mNanos, mCount);
+            Arrays.sort(sorted);
+            long total = 0;
+            for (long nanos : sorted) {
+                total += nanos;
+            }
+            JSONObject json = new JSONObject();
+            json.put("name", mName);
+            json.put("samples", mCount);
+            json.put("rowsPerSecond", total == 0 ? 0 : mCount * mRowsPerSample * 1e9 / total);
+            json.put("p50Micros", percentile(sorted, 0.50) / 1000.0);
+            json.put("p99Micros", percentile(sorted, 0.99) / 1000.0);
+            json.put("maxMicros", mCount == 0 ? 0 : sorted[mCount - 1] / 1000.0);
+            return json;
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) return 0;
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.mygarden.provider.PlantContract.PlantCountEntry;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.utils.PlantLifecycle;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Upgrades databases written by older versions of the app and checks that the garden survives
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class PlantDbHelperUpgradeTest {
+
+    private static final int PLANT_COUNT = 50;
+    // Close to the time the counts are filled at on upgrade, so the plants have every status
+    private static final long TIME_NOW = System.currentTimeMillis();
+
+    private PlantDbHelper mDbHelper;
+
+    @After
+    public void tearDown() {
+        if (mDbHelper != null) mDbHelper.close();
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsPlants() {
+        SQLiteDatabase oldDb = createVersion1Database();
+        insertPlants(oldDb);
+        oldDb.close();
+
+        SQLiteDatabase db = openCurrentDatabase();
+        assertPlantsKept(db);
+        assertHasIndex(db, PlantEntry.INDEX_LAST_WATERED_TIME);
+        assertHasIndex(db, PlantEntry.INDEX_CREATION_TIME);
+    }
+
+    @Test
+    public void upgradeFromVersion1_countsPlants() {
+        SQLiteDatabase oldDb = createVersion1Database();
+        insertPlants(oldDb);
+        oldDb.close();
+
+        assertCountsKeptUpToDate(openCurrentDatabase());
+    }
+
+    @Test
+    public void upgradeFromVersion2_countsPlants() {
+        SQLiteDatabase oldDb = createVersion1Database();
+        oldDb.execSQL("CREATE INDEX " + PlantEntry.INDEX_LAST_WATERED_TIME +
+                " ON " + PlantEntry.TABLE_NAME + " (" + PlantEntry.COLUMN_LAST_WATERED_TIME + ")");
+        oldDb.execSQL("CREATE INDEX " + PlantEntry.INDEX_CREATION_TIME +
+                " ON " + PlantEntry.TABLE_NAME + " (" + PlantEntry.COLUMN_CREATION_TIME + ")");
+        oldDb.setVersion(2);
+        insertPlants(oldDb);
+        oldDb.close();
+
+        SQLiteDatabase db = openCurrentDatabase();
+        assertPlantsKept(db);
+        assertCountsKeptUpToDate(db);
+    }
+
+    /**
+     * Creates the database as version 1 of the app did, with only the plants table
+     */
+    private static SQLiteDatabase createVersion1Database() {
+        File path = RuntimeEnvironment.application.getDatabasePath(PlantDbHelper.DATABASE_NAME);
+        assertTrue(path.getParentFile().isDirectory() || path.getParentFile().mkdirs());
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(path, null);
+        db.execSQL("CREATE TABLE " + PlantEntry.TABLE_NAME + " (" +
+                PlantEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                PlantEntry.COLUMN_PLANT_TYPE + " INTEGER NOT NULL, " +
+                PlantEntry.COLUMN_CREATION_TIME + " TIMESTAMP NOT NULL, " +
+                PlantEntry.COLUMN_LAST_WATERED_TIME + " TIMESTAMP NOT NULL)");
+        db.setVersion(1);
+        return db;
+    }
+
+    private static void insertPlants(SQLiteDatabase db) {
+        for (int i = 0; i < PLANT_COUNT; i++) {
+            ContentValues values = new ContentValues();
+            values.put(PlantEntry.COLUMN_PLANT_TYPE, i % 3);
+            values.put(PlantEntry.COLUMN_CREATION_TIME, TIME_NOW - 2 * i);
+            values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, getWateredAt(i));
+            db.insert(PlantEntry.TABLE_NAME, null, values);
+        }
+    }
+
+    // Plants are watered four at a time, two hours apart, so that they span every status and
+    // some plants of a type share a watering time
+    private static long getWateredAt(int i) {
+        return TIME_NOW - (i / 4) * 2 * PlantLifecycle.HOUR_MILLISECONDS;
+    }
+
+    private SQLiteDatabase openCurrentDatabase() {
+        mDbHelper = new PlantDbHelper(RuntimeEnvironment.application);
+        return mDbHelper.getWritableDatabase();
+    }
+
+    /**
+     * Checks that the plant counts were filled from the upgraded plants, then that the
+     * triggers keep them up to date as plants are inserted, watered, changed and deleted
+     */
+    private static void assertCountsKeptUpToDate(SQLiteDatabase db) {
+        assertCountsMatchPlants(db);
+
+        ContentValues values = new ContentValues();
+        values.put(PlantEntry.COLUMN_PLANT_TYPE, 1);
+        values.put(PlantEntry.COLUMN_CREATION_TIME, TIME_NOW);
+        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, TIME_NOW);
+        db.insert(PlantEntry.TABLE_NAME, null, values);
+        assertCountsMatchPlants(db);
+
+        values.clear();
+        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, TIME_NOW + 1);
+        db.update(PlantEntry.TABLE_NAME, values, PlantEntry._ID + "<=?", new String[]{"10"});
+        assertCountsMatchPlants(db);
+
+        values.clear();
+        values.put(PlantEntry.COLUMN_PLANT_TYPE, 2);
+        db.update(PlantEntry.TABLE_NAME, values, PlantEntry._ID + "=?", new String[]{"20"});
+        assertCountsMatchPlants(db);
+
+        db.delete(PlantEntry.TABLE_NAME, PlantEntry._ID + ">?", new String[]{"40"});
+        assertCountsMatchPlants(db);
+    }
+
+    /**
+     * Checks that the counts hold the statuses of the plants at the time they were counted at
+     */
+    private static void assertCountsMatchPlants(SQLiteDatabase db) {
+        String countedAt = "(SELECT " + PlantCountEntry.COLUMN_COUNTED_AT +
+                " FROM " + PlantCountEntry.TIME_TABLE_NAME + ")";
+        String wateredAt = PlantEntry.COLUMN_LAST_WATERED_TIME;
+        String status = "CASE WHEN " + wateredAt + " < " + countedAt + " - " +
+                PlantLifecycle.MAX_AGE_WITHOUT_WATER + " THEN " + PlantLifecycle.STATUS_DEAD +
+                " WHEN " + wateredAt + " < " + countedAt + " - " +
+                PlantLifecycle.DANGER_AGE_WITHOUT_WATER + " THEN " + PlantLifecycle.STATUS_DYING +
+                " ELSE " + PlantLifecycle.STATUS_ALIVE + " END";
+        String groupedPlants = "SELECT " + PlantEntry.COLUMN_PLANT_TYPE + ", " + status +
+                ", COUNT(*) FROM " + PlantEntry.TABLE_NAME + " GROUP BY 1, 2";
+        String nonEmptyCounts = "SELECT " + PlantCountEntry.COLUMN_PLANT_TYPE + ", " +
+                PlantCountEntry.COLUMN_STATUS + ", " + PlantCountEntry.COLUMN_COUNT +
+                " FROM " + PlantCountEntry.TABLE_NAME +
+                " WHERE " + PlantCountEntry.COLUMN_COUNT + "!=0";
+        // Both ways around, so that neither has rows that the other doesn't
+        assertEmpty(db, groupedPlants + " EXCEPT " + nonEmptyCounts);
+        assertEmpty(db, nonEmptyCounts + " EXCEPT " + groupedPlants);
+    }
+
+    private static void assertEmpty(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            assertEquals(sql, 0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void assertPlantsKept(SQLiteDatabase db) {
+        Cursor cursor = db.query(PlantEntry.TABLE_NAME,
+                new String[]{PlantEntry._ID, PlantEntry.COLUMN_PLANT_TYPE,
+                        PlantEntry.COLUMN_CREATION_TIME, PlantEntry.COLUMN_LAST_WATERED_TIME},
+                null, null, null, null, PlantEntry._ID);
+        try {
+            assertEquals(PLANT_COUNT, cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                assertEquals(i + 1, cursor.getLong(0));
+                assertEquals(i % 3, cursor.getInt(1));
+                assertEquals(TIME_NOW - 2 * i, cursor.getLong(2));
+                assertEquals(getWateredAt(i), cursor.getLong(3));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void assertHasIndex(SQLiteDatabase db, String index) {
+        Cursor cursor = db.query("sqlite_master", new String[]{"name"},
+                "type='index' AND name=?", new String[]{index}, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.util.SparseArray;
+
+import com.example.android.mygarden.provider.PlantContract.PlantCountEntry;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.utils.PlantImages;
+import com.example.android.mygarden.utils.PlantLifecycle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Moves a garden through time and checks that the trigger-maintained plant counts, as read
+ * through the summary URI and countByStatus, match the statuses of the plants themselves,
+ * and that they take a row per plant type and status at most
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class PlantStatusCountsTest {
+
+    private static final long TIME_NOW = 1500000000000L;
+    private static final long MINUTES = PlantLifecycle.MINUTE_MILLISECONDS;
+    private static final int TYPE_COUNT = 3;
+    private static final int RANDOM_OPERATION_COUNT = 300;
+
+    /**
+     * The provider, with a clock that the test sets
+     */
+    public static class ClockedPlantContentProvider extends PlantContentProvider {
+        long mTimeNow = TIME_NOW;
+
+        @Override
+        long currentTimeMillis() {
+            return mTimeNow;
+        }
+    }
+
+    private ClockedPlantContentProvider mProvider;
+    private PlantDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.buildContentProvider(ClockedPlantContentProvider.class)
+                .create(PlantContract.AUTHORITY).get();
+    }
+
+    @After
+    public void tearDown() {
+        if (mDbHelper != null) mDbHelper.close();
+    }
+
+    @Test
+    public void counts_followPlantsThroughTheirLife() {
+        // Plants of every status, some of them watered at the same time
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            insertPlant(i, mProvider.mTimeNow);
+        }
+        ContentValues[] plants = new ContentValues[30];
+        for (int i = 0; i < plants.length; i++) {
+            plants[i] = newPlant(i % TYPE_COUNT, mProvider.mTimeNow - (i / 2) * 50 * MINUTES);
+        }
+        mProvider.bulkInsert(PlantEntry.CONTENT_URI, plants);
+        assertCountsMatchPlants();
+
+        advanceTime(3 * PlantLifecycle.HOUR_MILLISECONDS);
+        List<Long> ids = getPlantIds();
+        waterPlant(ids.get(0));
+        waterPlant(ids.get(ids.size() - 1));
+        assertCountsMatchPlants();
+        mProvider.call(PlantContract.METHOD_WATER_ALL, null, null);
+        assertCountsMatchPlants();
+
+        setPlantType(ids.get(1), 2);
+        ContentValues values = new ContentValues();
+        values.put(PlantEntry.COLUMN_PLANT_TYPE, 0);
+        mProvider.update(PlantEntry.CONTENT_URI, values,
+                PlantEntry.COLUMN_PLANT_TYPE + "=?", new String[]{"1"});
+        assertCountsMatchPlants();
+        deletePlant(ids.get(2));
+        assertCountsMatchPlants();
+
+        // Through dying and into dead, with nothing written in between
+        advanceTime(PlantLifecycle.DANGER_AGE_WITHOUT_WATER);
+        assertCountsMatchPlants();
+        advanceTime(PlantLifecycle.MAX_AGE_WITHOUT_WATER);
+        assertCountsMatchPlants();
+
+        // Writes made long after the counts were last moved
+        advanceTime(PlantLifecycle.DAY_MILLISECONDS);
+        insertPlant(1, mProvider.mTimeNow);
+        setPlantType(ids.get(3), 1);
+        deletePlant(ids.get(4));
+        deletePlant(ids.get(5));
+        assertCountsMatchPlants();
+
+        // Moved at a transition, as PlantWateringService does, then read later
+        mProvider.call(PlantContract.METHOD_ADVANCE_COUNTS, null, null);
+        assertCountedAt(mProvider.mTimeNow);
+        advanceTime(PlantLifecycle.DANGER_AGE_WITHOUT_WATER + 1);
+        assertCountsMatchPlants();
+
+        // The clock going back moves the counts back
+        advanceTime(-PlantLifecycle.MAX_AGE_WITHOUT_WATER);
+        assertCountsMatchPlants();
+        assertCountRowsBounded();
+    }
+
+    @Test
+    public void counts_matchPlantsAfterRandomOperations() {
+        Random random = new Random(25);
+        for (int i = 0; i < RANDOM_OPERATION_COUNT; i++) {
+            List<Long> ids = getPlantIds();
+            long id = ids.isEmpty() ? PlantContract.INVALID_PLANT_ID
+                    : ids.get(random.nextInt(ids.size()));
+            int operation = random.nextInt(7);
+            if (operation == 0 || id == PlantContract.INVALID_PLANT_ID) {
+                insertPlant(random.nextInt(TYPE_COUNT), mProvider.mTimeNow);
+            } else if (operation == 1) {
+                ContentValues[] plants = new ContentValues[1 + random.nextInt(5)];
+                for (int j = 0; j < plants.length; j++) {
+                    plants[j] = newPlant(random.nextInt(TYPE_COUNT), mProvider.mTimeNow);
+                }
+                mProvider.bulkInsert(PlantEntry.CONTENT_URI, plants);
+            } else if (operation == 2) {
+                waterPlant(id);
+            } else if (operation == 3) {
+                mProvider.call(PlantContract.METHOD_WATER_ALL, null, null);
+            } else if (operation == 4) {
+                setPlantType(id, random.nextInt(TYPE_COUNT));
+            } else if (operation == 5) {
+                deletePlant(id);
+            } else {
+                advanceTime(random.nextInt(4 * 60) * MINUTES);
+            }
+            // Not every write is followed by a read, so some are made with counts that
+            // haven't been moved to the current time yet
+            if (random.nextBoolean()) assertCountsMatchPlants();
+        }
+        assertCountsMatchPlants();
+        assertCountRowsBounded();
+    }
+
+    private void advanceTime(long millis) {
+        mProvider.mTimeNow += millis;
+    }
+
+    private void insertPlant(int type, long wateredAt) {
+        mProvider.insert(PlantEntry.CONTENT_URI, newPlant(type, wateredAt));
+    }
+
+    private void waterPlant(long id) {
+        mProvider.call(PlantContract.METHOD_WATER_PLANT, String.valueOf(id), null);
+    }
+
+    private void setPlantType(long id, int type) {
+        ContentValues values = new ContentValues();
+        values.put(PlantEntry.COLUMN_PLANT_TYPE, type);
+        mProvider.update(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, id), values, null, null);
+    }
+
+    private void deletePlant(long id) {
+        mProvider.delete(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, id), null, null);
+    }
+
+    private ContentValues newPlant(int type, long wateredAt) {
+        ContentValues values = new ContentValues();
+        values.put(PlantEntry.COLUMN_PLANT_TYPE, type);
+        values.put(PlantEntry.COLUMN_CREATION_TIME, mProvider.mTimeNow);
+        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, wateredAt);
+        return values;
+    }
+
+    private List<Long> getPlantIds() {
+        Cursor cursor = mProvider.query(PlantEntry.CONTENT_URI, new String[]{PlantEntry._ID},
+                null, null, PlantEntry._ID);
+        try {
+            List<Long> ids = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Checks the summary rows and countByStatus against the statuses of the plants
+     */
+    private void assertCountsMatchPlants() {
+        SparseArray<int[]> expected = new SparseArray<>();
+        int[] expectedTotal = new int[3];
+        Cursor cursor = mProvider.query(PlantEntry.CONTENT_URI,
+                new String[]{PlantEntry.COLUMN_PLANT_TYPE, PlantEntry.COLUMN_LAST_WATERED_TIME},
+                null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                int type = cursor.getInt(0);
+                int status = PlantLifecycle.getStatus(mProvider.mTimeNow - cursor.getLong(1));
+                if (expected.get(type) == null) expected.put(type, new int[3]);
+                expected.get(type)[status]++;
+                expectedTotal[status]++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        cursor = mProvider.query(PlantEntry.CONTENT_SUMMARY_URI, null, null, null, null);
+        try {
+            assertEquals(expected.size(), cursor.getCount());
+            while (cursor.moveToNext()) {
+                int type = cursor.getInt(cursor.getColumnIndex(PlantEntry.COLUMN_PLANT_TYPE));
+                int[] typeCounts = expected.get(type);
+                assertEquals("alive of type " + type, typeCounts[PlantLifecycle.STATUS_ALIVE],
+                        cursor.getInt(cursor.getColumnIndex(PlantEntry.COLUMN_ALIVE_COUNT)));
+                assertEquals("dying of type " + type, typeCounts[PlantLifecycle.STATUS_DYING],
+                        cursor.getInt(cursor.getColumnIndex(PlantEntry.COLUMN_DYING_COUNT)));
+                assertEquals("dead of type " + type, typeCounts[PlantLifecycle.STATUS_DEAD],
+                        cursor.getInt(cursor.getColumnIndex(PlantEntry.COLUMN_DEAD_COUNT)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        Bundle total = mProvider.call(PlantContract.METHOD_COUNT_BY_STATUS, null, null);
+        assertEquals(expectedTotal[PlantLifecycle.STATUS_ALIVE],
+                total.getInt(PlantContract.KEY_ALIVE_COUNT));
+        assertEquals(expectedTotal[PlantLifecycle.STATUS_DYING],
+                total.getInt(PlantContract.KEY_DYING_COUNT));
+        assertEquals(expectedTotal[PlantLifecycle.STATUS_DEAD],
+                total.getInt(PlantContract.KEY_DEAD_COUNT));
+    }
+
+    /**
+     * Checks that the counts were last moved to the given time
+     */
+    private void assertCountedAt(long time) {
+        Cursor cursor = getDatabase().query(PlantCountEntry.TIME_TABLE_NAME,
+                new String[]{PlantCountEntry.COLUMN_COUNTED_AT}, null, null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(time, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Checks that the counts take a row per plant type and status at most, however many
+     * plants and watering times there are
+     */
+    private void assertCountRowsBounded() {
+        Cursor cursor = getDatabase().query(PlantCountEntry.TABLE_NAME, new String[]{"COUNT(*)"},
+                null, null, null, null, null);
+        try {
+            cursor.moveToFirst();
+            assertTrue(cursor.getInt(0) + " count rows",
+                    cursor.getInt(0) <= TYPE_COUNT * PlantImages.STATUS_COUNT);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private SQLiteDatabase getDatabase() {
+        if (mDbHelper == null) mDbHelper = new PlantDbHelper(RuntimeEnvironment.application);
+        return mDbHelper.getReadableDatabase();
+    }
+}
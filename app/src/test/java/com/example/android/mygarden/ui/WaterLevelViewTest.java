@@ -0,0 +1,160 @@
+package com.example.android.mygarden.ui;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.view.View;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowCanvas;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs WaterLevelView's value animation frame by frame, and checks that drawing the frames
+ * reuses the view's Paint and RectF and measures the bytes they allocate
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class WaterLevelViewTest {
+
+    private static final int SIZE = 200;
+    private static final long FRAME_MILLIS = 16;
+    // Enough frames to run the whole animation
+    private static final int FRAME_COUNT = 60;
+    // The smallest object a 64-bit JVM allocates
+    private static final long MIN_OBJECT_BYTES = 16;
+
+    /**
+     * A canvas that only keeps the last sweep drawn. Unlike the shadowed Canvas, it doesn't
+     * record a history of the calls, so drawing on it allocates nothing by itself.
+     */
+    private static class SweepCanvas extends Canvas {
+        float mSweep;
+
+        @Override
+        public void drawCircle(float cx, float cy, float radius, Paint paint) {
+            mSweep = 360;
+        }
+
+        @Override
+        public void drawArc(RectF oval, float startAngle, float sweepAngle, boolean useCenter,
+                            Paint paint) {
+            mSweep = sweepAngle;
+        }
+    }
+
+    private WaterLevelView mView;
+    private Canvas mCanvas;
+
+    @Before
+    public void setUp() {
+        mView = new WaterLevelView(RuntimeEnvironment.application,
+                Robolectric.buildAttributeSet().build());
+        mView.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        mView.layout(0, 0, SIZE, SIZE);
+        mCanvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void animatedFrames_reuseTheirPaintAndRect() {
+        Paint paint = mView.mPaint;
+        RectF circleRect = mView.mCircleRec;
+        ShadowCanvas shadowCanvas = Shadows.shadowOf(mCanvas);
+
+        // From the default 100% down to 30%
+        mView.setValue(30);
+        float lastSweep = 360;
+        int animatedFrames = 0;
+        for (int frame = 0; frame < FRAME_COUNT; frame++) {
+            ShadowLooper.idleMainLooper(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+            int arcCount = shadowCanvas.getArcPaintHistoryCount();
+            mView.draw(mCanvas);
+
+            assertSame(paint, mView.mPaint);
+            assertSame(circleRect, mView.mCircleRec);
+            if (shadowCanvas.getArcPaintHistoryCount() > arcCount) {
+                float sweep = shadowCanvas.getDrawnArc(arcCount).sweepAngle;
+                assertTrue("The level went up to " + sweep, sweep <= lastSweep);
+                if (sweep < lastSweep) animatedFrames++;
+                lastSweep = sweep;
+            }
+        }
+
+        // The value was animated over several frames, and ended at 30% of the circle
+        assertTrue("Only " + animatedFrames + " animated frames", animatedFrames > 1);
+        assertEquals(360f * 30 / 100, lastSweep, 0.01f);
+    }
+
+    @Test
+    public void animatedFrames_drawWithoutAllocating() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean()
+                instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported()
+                && threads.isThreadAllocatedMemoryEnabled());
+        long threadId = Thread.currentThread().getId();
+        SweepCanvas canvas = new SweepCanvas();
+
+        // A first animation, so that lazy initialization isn't counted
+        mView.setValue(30);
+        for (int frame = 0; frame < FRAME_COUNT; frame++) {
+            ShadowLooper.idleMainLooper(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+            mView.onDraw(canvas);
+        }
+
+        // Back up to 80%, counting only the bytes allocated while drawing. Running the looper
+        // between the frames allocates on its own.
+        mView.setValue(80);
+        long drawBytes = 0;
+        int animatedFrames = 0;
+        float lastSweep = canvas.mSweep;
+        for (int frame = 0; frame < FRAME_COUNT; frame++) {
+            ShadowLooper.idleMainLooper(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+            long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+            mView.onDraw(canvas);
+            drawBytes += threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+            if (canvas.mSweep > lastSweep) animatedFrames++;
+            lastSweep = canvas.mSweep;
+        }
+
+        assertTrue("Only " + animatedFrames + " animated frames", animatedFrames > 1);
+        assertEquals(360f * 80 / 100, lastSweep, 0.01f);
+        // Less than one object per frame, so no frame allocated a Paint, RectF or anything else
+        assertTrue(drawBytes + " bytes allocated by " + FRAME_COUNT + " frames",
+                drawBytes < FRAME_COUNT * MIN_OBJECT_BYTES);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.android.mygarden.utils;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+
+import com.example.android.mygarden.R;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Compares the lookup table behind PlantUtils.getPlantImgRes with the by-name lookup it
+ * replaced, which read the plant_types array and called getIdentifier on every call. The
+ * speed of both is compared by the benchmark module's PlantImageBenchmark.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class PlantUtilsImageTest {
+
+    private static final String[] STATUS_SUFFIXES = {"", "_danger", "_dead"};
+    private static final String[] SIZE_SUFFIXES = {"_1", "_2", "_3"};
+
+    private Context mContext;
+    private int mTypeCount;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        TypedArray plantTypes = mContext.getResources().obtainTypedArray(R.array.plant_types);
+        mTypeCount = plantTypes.length();
+        plantTypes.recycle();
+    }
+
+    @Test
+    public void getPlantImgRes_matchesLookupByName() {
+        for (int type = 0; type < mTypeCount; type++) {
+            for (int status = 0; status < STATUS_SUFFIXES.length; status++) {
+                for (int size = 0; size < SIZE_SUFFIXES.length; size++) {
+                    int expected = getPlantImgResByName(mContext, type, status, size);
+                    assertNotEquals(0, expected);
+                    assertEquals(expected, PlantUtils.getPlantImgRes(mContext, type, status, size));
+                }
+            }
+        }
+    }
+
+    /**
+     * The lookup getPlantImgRes used before the table, apart from recycling the TypedArray
+     */
+    private static int getPlantImgResByName(Context context, int type, int status, int size) {
+        Resources res = context.getResources();
+        TypedArray plantTypes = res.obtainTypedArray(R.array.plant_types);
+        String resName = plantTypes.getString(type) + STATUS_SUFFIXES[status] + SIZE_SUFFIXES[size];
+        plantTypes.recycle();
+        return res.getIdentifier(resName, "drawable", context.getPackageName());
+    }
+}
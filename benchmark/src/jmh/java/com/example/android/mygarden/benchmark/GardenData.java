@@ -0,0 +1,37 @@
+package com.example.android.mygarden.benchmark;
+
+import com.example.android.mygarden.utils.PlantLifecycle;
+
+import java.util.Random;
+
+/**
+ * Generates reproducible gardens whose plants are spread over every lifecycle stage
+ */
+final class GardenData {
+
+    static final int TYPE_COUNT = 2;
+    // All gardens are evaluated at this time
+    static final long TIME_NOW = 1500000000000L;
+
+    final long[] ids;
+    final int[] types;
+    final long[] createdAt;
+    final long[] wateredAt;
+
+    GardenData(int size) {
+        Random random = new Random(size);
+        ids = new long[size];
+        types = new int[size];
+        createdAt = new long[size];
+        wateredAt = new long[size];
+        long maxPlantAge = 2 * PlantLifecycle.FULLY_GROWN_AGE;
+        long maxWaterAge = 2 * PlantLifecycle.MAX_AGE_WITHOUT_WATER;
+        for (int i = 0; i < size; i++) {
+            ids[i] = i + 1;
+            types[i] = random.nextInt(TYPE_COUNT);
+            long plantAge = (long) (random.nextDouble() * maxPlantAge);
+            createdAt[i] = TIME_NOW - plantAge;
+            wateredAt[i] = TIME_NOW - (long) (random.nextDouble() * Math.min(plantAge, maxWaterAge));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.android.mygarden.benchmark;
+
+import com.example.android.mygarden.utils.PlantImages;
+import com.example.android.mygarden.utils.PlantLifecycle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolving the image of every plant displayed: through the table indexed by
+ * PlantImages.getImageIndex that PlantUtils.getPlantImgRes uses, and by building the image's
+ * resource name, as getPlantImgRes did before. Resources.getIdentifier is stood in for by a
+ * map of the names, so the by-name cost is a lower bound of what it is on a device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlantImageBenchmark {
+
+    // Same as the plant_types array and the image names of the app
+    private static final String[] TYPE_NAMES = {"vine", "cactus"};
+    private static final String[] STATUS_SUFFIXES = {"", "_danger", "_dead"};
+    private static final String[] SIZE_SUFFIXES = {"_1", "_2", "_3"};
+
+    @Param({"10", "1000", "100000"})
+    public int gardenSize;
+
+    private GardenData mGarden;
+    private int[] mImageTable;
+    private Map<String, Integer> mImagesByName;
+
+    @Setup
+    public void setUp() {
+        mGarden = new GardenData(gardenSize);
+        mImageTable = new int[PlantImages.getImageCount(GardenData.TYPE_COUNT)];
+        mImagesByName = new HashMap<>();
+        for (int type = 0; type < GardenData.TYPE_COUNT; type++) {
+            for (int status = 0; status < PlantImages.STATUS_COUNT; status++) {
+                for (int size = 0; size < PlantImages.SIZE_COUNT; size++) {
+                    // Made up resource IDs, the same in both lookups
+                    int resId = 0x7f020000 + PlantImages.getImageIndex(
+                            GardenData.TYPE_COUNT, type, status, size);
+                    mImageTable[PlantImages.getImageIndex(GardenData.TYPE_COUNT, type, status, size)] = resId;
+                    mImagesByName.put(getImageName(type, status, size), resId);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void imageTable(Blackhole blackhole) {
+        int[] types = mGarden.types;
+        for (int i = 0; i < gardenSize; i++) {
+            int index = PlantImages.getImageIndex(GardenData.TYPE_COUNT, types[i],
+                    getStatus(i), getSize(i));
+            blackhole.consume(index < 0 ? 0 : mImageTable[index]);
+        }
+    }
+
+    @Benchmark
+    public void imageByName(Blackhole blackhole) {
+        int[] types = mGarden.types;
+        for (int i = 0; i < gardenSize; i++) {
+            int size = getSize(i);
+            // The empty pot isn't looked up by name
+            if (size == PlantLifecycle.SIZE_EMPTY) continue;
+            Integer resId = mImagesByName.get(getImageName(types[i], getStatus(i), size));
+            blackhole.consume(resId == null ? 0 : resId);
+        }
+    }
+
+    private int getStatus(int plant) {
+        return PlantLifecycle.getStatus(GardenData.TIME_NOW - mGarden.wateredAt[plant]);
+    }
+
+    private int getSize(int plant) {
+        return PlantLifecycle.getSize(GardenData.TIME_NOW - mGarden.createdAt[plant]);
+    }
+
+    private static String getImageName(int type, int status, int size) {
+        return TYPE_NAMES[type] + STATUS_SUFFIXES[status] + SIZE_SUFFIXES[size];
+    }
+}
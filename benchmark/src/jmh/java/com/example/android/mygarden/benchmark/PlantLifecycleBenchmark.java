@@ -0,0 +1,94 @@
+package com.example.android.mygarden.benchmark;
+
+import com.example.android.mygarden.utils.PlantAge;
+import com.example.android.mygarden.utils.PlantImages;
+import com.example.android.mygarden.utils.PlantLifecycle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-plant time math: which image a plant is displayed with, batch evaluation of whole
+ * gardens, and the displayed ages
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlantLifecycleBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int gardenSize;
+
+    private GardenData mGarden;
+    private byte[] mStatuses;
+    private byte[] mSizes;
+
+    @Setup
+    public void setUp() {
+        mGarden = new GardenData(gardenSize);
+        mStatuses = new byte[gardenSize];
+        mSizes = new byte[gardenSize];
+    }
+
+    /**
+     * The image decision made for every plant displayed, one plant at a time
+     */
+    @Benchmark
+    public void imageIndex(Blackhole blackhole) {
+        long[] createdAt = mGarden.createdAt;
+        long[] wateredAt = mGarden.wateredAt;
+        int[] types = mGarden.types;
+        for (int i = 0; i < gardenSize; i++) {
+            blackhole.consume(PlantImages.getImageIndex(GardenData.TYPE_COUNT, types[i],
+                    GardenData.TIME_NOW - createdAt[i], GardenData.TIME_NOW - wateredAt[i]));
+        }
+    }
+
+    /**
+     * The same decisions made for a whole garden in one pass
+     */
+    @Benchmark
+    public byte[] evaluate() {
+        PlantLifecycle.evaluate(mGarden.createdAt, mGarden.wateredAt, gardenSize,
+                GardenData.TIME_NOW, mStatuses, mSizes);
+        return mStatuses;
+    }
+
+    /**
+     * The same pass split across processors for gardens of PARALLEL_THRESHOLD plants or more,
+     * as snapshots are evaluated
+     */
+    @Benchmark
+    public byte[] evaluateParallel() {
+        PlantLifecycle.evaluateParallel(mGarden.createdAt, mGarden.wateredAt, gardenSize,
+                GardenData.TIME_NOW, mStatuses, mSizes);
+        return mStatuses;
+    }
+
+    @Benchmark
+    public void displayAge(Blackhole blackhole) {
+        long[] createdAt = mGarden.createdAt;
+        for (int i = 0; i < gardenSize; i++) {
+            blackhole.consume(PlantAge.getDisplayAgeInt(GardenData.TIME_NOW - createdAt[i]));
+        }
+    }
+
+    @Benchmark
+    public void nextTransitionTime(Blackhole blackhole) {
+        long[] createdAt = mGarden.createdAt;
+        long[] wateredAt = mGarden.wateredAt;
+        for (int i = 0; i < gardenSize; i++) {
+            blackhole.consume(PlantLifecycle.getNextTransitionTime(
+                    createdAt[i], wateredAt[i], GardenData.TIME_NOW));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.android.mygarden.benchmark;
+
+import com.example.android.mygarden.utils.PlantSnapshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding cursor rows into a PlantSnapshot, and finding the thirstiest plant in the arrays
+ * of a decoded garden
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlantSnapshotBenchmark {
+
+    // Column order of the rows, same as PlantSnapshots.PROJECTION
+    private static final int ID_COLUMN = 0;
+    private static final int TYPE_COLUMN = 1;
+    private static final int CREATED_COLUMN = 2;
+    private static final int WATERED_COLUMN = 3;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int gardenSize;
+
+    private GardenData mGarden;
+    private ArrayRows mRows;
+
+    @Setup
+    public void setUp() {
+        mGarden = new GardenData(gardenSize);
+        mRows = new ArrayRows(mGarden);
+    }
+
+    @Benchmark
+    public PlantSnapshot decode() {
+        return PlantSnapshot.decode(mRows, ID_COLUMN, TYPE_COLUMN, CREATED_COLUMN,
+                WATERED_COLUMN, GardenData.TIME_NOW);
+    }
+
+    /**
+     * The plant watered the longest time ago, as the provider's getThirstiest finds it through
+     * the last watering time index, here with a scan of the in-memory column
+     */
+    @Benchmark
+    public long thirstiest() {
+        long[] wateredAt = mGarden.wateredAt;
+        int thirstiest = 0;
+        for (int i = 1; i < gardenSize; i++) {
+            if (wateredAt[i] < wateredAt[thirstiest]) thirstiest = i;
+        }
+        return mGarden.ids[thirstiest];
+    }
+
+    /**
+     * In-memory rows with a cursor's access pattern: move to a row, then read its columns
+     */
+    private static final class ArrayRows implements PlantSnapshot.Rows {
+        private final long[][] mColumns;
+        private final int mCount;
+        private int mPosition = -1;
+
+        ArrayRows(GardenData garden) {
+            long[] types = new long[garden.types.length];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = garden.types[i];
+            }
+            mColumns = new long[][]{garden.ids, types, garden.createdAt, garden.wateredAt};
+            mCount = garden.ids.length;
+        }
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public boolean moveToPosition(int position) {
+            if (position < 0 || position >= mCount) return false;
+            mPosition = position;
+            return true;
+        }
+
+        @Override
+        public long getLong(int column) {
+            return mColumns[column][mPosition];
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) mColumns[column][mPosition];
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.android.mygarden.utils;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+/**
+ * Converts ages to the value and unit they are displayed in. Plain Java, the unit strings are
+ * resolved by PlantUtils.
+ */
+public final class PlantAge {
+
+    // Display units of getDisplayAgeUnitIndex
+    public static final int AGE_UNIT_DAYS = 0;
+    public static final int AGE_UNIT_HOURS = 1;
+    public static final int AGE_UNIT_MINUTES = 2;
+
+    private PlantAge() {
+    }
+
+    /**
+     * Converts the age in milli seconds to a displayable format (days, hours or minutes)
+     *
+     * @param milliSeconds The age in milli seconds
+     * @return The value of either days, hours or minutes
+     */
+    public static int getDisplayAgeInt(long milliSeconds) {
+        return getDisplayAgeInt(milliSeconds, getDisplayAgeUnitIndex(milliSeconds));
+    }
+
+    /**
+     * Converts the age in milli seconds to a value in the given display unit
+     *
+     * @param milliSeconds The age in milli seconds
+     * @param unit         The display unit returned by getDisplayAgeUnitIndex
+     * @return The value of either days, hours or minutes
+     */
+    public static int getDisplayAgeInt(long milliSeconds, int unit) {
+        switch (unit) {
+            case AGE_UNIT_DAYS:
+                return (int) (milliSeconds / PlantLifecycle.DAY_MILLISECONDS);
+            case AGE_UNIT_HOURS:
+                return (int) (milliSeconds / PlantLifecycle.HOUR_MILLISECONDS);
+            default:
+                return (int) (milliSeconds / PlantLifecycle.MINUTE_MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the unit the age in milli seconds is displayed in
+     *
+     * @param milliSeconds The age in milli seconds
+     * @return One of AGE_UNIT_DAYS, AGE_UNIT_HOURS or AGE_UNIT_MINUTES
+     */
+    public static int getDisplayAgeUnitIndex(long milliSeconds) {
+        if (milliSeconds >= PlantLifecycle.DAY_MILLISECONDS) return AGE_UNIT_DAYS;
+        if (milliSeconds >= PlantLifecycle.HOUR_MILLISECONDS) return AGE_UNIT_HOURS;
+        return AGE_UNIT_MINUTES;
+    }
+}
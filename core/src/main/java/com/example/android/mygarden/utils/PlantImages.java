@@ -0,0 +1,69 @@
+package com.example.android.mygarden.utils;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+/**
+ * Decides which image a plant is displayed with. Images are numbered by plant type, then
+ * status, then size, followed by the empty pot shared by all plants that haven't sprouted yet.
+ * Plain Java, the image resources are looked up by PlantUtils.
+ */
+public final class PlantImages {
+
+    public static final int STATUS_COUNT = PlantLifecycle.STATUS_DEAD + 1;
+    public static final int SIZE_COUNT = PlantLifecycle.SIZE_FULLY_GROWN + 1;
+
+    private PlantImages() {
+    }
+
+    /**
+     * @param typeCount The number of plant types
+     * @return The number of images, including the empty pot
+     */
+    public static int getImageCount(int typeCount) {
+        return typeCount * STATUS_COUNT * SIZE_COUNT + 1;
+    }
+
+    /**
+     * Returns the image of a plant given its type and its status and size evaluated by
+     * PlantLifecycle
+     *
+     * @param typeCount The number of plant types
+     * @param type      The plant type
+     * @param status    The PlantLifecycle status
+     * @param size      The PlantLifecycle size
+     * @return The image index, or -1 for an unknown type
+     */
+    public static int getImageIndex(int typeCount, int type, int status, int size) {
+        if (size == PlantLifecycle.SIZE_EMPTY) return getImageCount(typeCount) - 1;
+        if (type < 0 || type >= typeCount) return -1;
+        return (type * STATUS_COUNT + status) * SIZE_COUNT + size;
+    }
+
+    /**
+     * Returns the image of a plant given its age and the time since it was last watered
+     *
+     * @param typeCount The number of plant types
+     * @param type      The plant type
+     * @param plantAge  Time (in milliseconds) the plant has been alive
+     * @param waterAge  Time (in milliseconds) since it was last watered
+     * @return The image index, or -1 for an unknown type
+     */
+    public static int getImageIndex(int typeCount, int type, long plantAge, long waterAge) {
+        return getImageIndex(typeCount, type,
+                PlantLifecycle.getStatus(waterAge), PlantLifecycle.getSize(plantAge));
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.android.mygarden.utils;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The plant lifecycle rules: how a plant's status (alive, dying or dead) and size follow from
+ * its creation and watering times. Plain Java with no Android dependencies, so it can run
+ * anywhere.
+ * <p>
+ * Statuses and sizes are ints whose values match the PlantUtils.PlantStatus and
+ * PlantUtils.PlantSize ordinals, plus SIZE_EMPTY for a plant that hasn't sprouted yet.
+ */
+public final class PlantLifecycle {
+
+    public static final long MINUTE_MILLISECONDS = 1000 * 60;
+    public static final long HOUR_MILLISECONDS = MINUTE_MILLISECONDS * 60;
+    public static final long DAY_MILLISECONDS = HOUR_MILLISECONDS * 24;
+
+    public static final long MIN_AGE_BETWEEN_WATER = HOUR_MILLISECONDS * 2; // can water every 2 hours
+    public static final long DANGER_AGE_WITHOUT_WATER = HOUR_MILLISECONDS * 6; // in danger after 6 hours
+    public static final long MAX_AGE_WITHOUT_WATER = HOUR_MILLISECONDS * 12; // plants die after 12 hours
+    public static final long TINY_AGE = DAY_MILLISECONDS * 0; // plants start tiny
+    public static final long JUVENILE_AGE = DAY_MILLISECONDS * 1; // 1 day old
+    public static final long FULLY_GROWN_AGE = DAY_MILLISECONDS * 2; // 2 days old
+
+    public static final int STATUS_ALIVE = 0;
+    public static final int STATUS_DYING = 1;
+    public static final int STATUS_DEAD = 2;
+
+    public static final int SIZE_EMPTY = -1;
+    public static final int SIZE_TINY = 0;
+    public static final int SIZE_JUVENILE = 1;
+    public static final int SIZE_FULLY_GROWN = 2;
+
+    // Times since the last watering, and ages, at which a plant looks different
+    public static final long[] WATER_AGE_THRESHOLDS =
+            {MIN_AGE_BETWEEN_WATER, DANGER_AGE_WITHOUT_WATER, MAX_AGE_WITHOUT_WATER};
+    public static final long[] PLANT_AGE_THRESHOLDS =
+            {TINY_AGE, JUVENILE_AGE, FULLY_GROWN_AGE};
+
+    // Gardens smaller than this are always evaluated on the calling thread
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private PlantLifecycle() {
+    }
+
+    /**
+     * Returns the status of a plant given the time since it was last watered
+     *
+     * @param waterAge Time (in milliseconds) since it was last watered
+     * @return One of STATUS_ALIVE, STATUS_DYING or STATUS_DEAD
+     */
+    public static int getStatus(long waterAge) {
+        if (waterAge > MAX_AGE_WITHOUT_WATER) return STATUS_DEAD;
+        if (waterAge > DANGER_AGE_WITHOUT_WATER) return STATUS_DYING;
+        return STATUS_ALIVE;
+    }
+
+    /**
+     * Returns the size of a plant given the time it has been alive
+     *
+     * @param plantAge Time (in milliseconds) the plant has been alive
+     * @return One of SIZE_EMPTY, SIZE_TINY, SIZE_JUVENILE or SIZE_FULLY_GROWN
+     */
+    public static int getSize(long plantAge) {
+        if (plantAge > FULLY_GROWN_AGE) return SIZE_FULLY_GROWN;
+        if (plantAge > JUVENILE_AGE) return SIZE_JUVENILE;
+        if (plantAge > TINY_AGE) return SIZE_TINY;
+        return SIZE_EMPTY;
+    }
+
+    /**
+     * Returns whether a plant can be watered given the time since it was last watered:
+     * it must still be alive, and at least MIN_AGE_BETWEEN_WATER must have passed
+     *
+     * @param waterAge Time (in milliseconds) since it was last watered
+     * @return True if the plant can be watered
+     */
+    public static boolean canWater(long waterAge) {
+        return waterAge > MIN_AGE_BETWEEN_WATER && waterAge < MAX_AGE_WITHOUT_WATER;
+    }
+
+    /**
+     * Returns the earliest time after timeNow at which a plant looks different: its status,
+     * size or whether it can be watered changes
+     *
+     * @param createdAt The plant's creation time
+     * @param wateredAt The plant's last watering time
+     * @param timeNow   The current time
+     * @return The time of the next transition, or Long.MAX_VALUE if the plant won't change anymore
+     */
+    public static long getNextTransitionTime(long createdAt, long wateredAt, long timeNow) {
+        long next = Long.MAX_VALUE;
+        for (long threshold : WATER_AGE_THRESHOLDS) {
+            next = earliestAfter(next, wateredAt + threshold, timeNow);
+        }
+        for (long threshold : PLANT_AGE_THRESHOLDS) {
+            next = earliestAfter(next, createdAt + threshold, timeNow);
+        }
+        return next;
+    }
+
+    private static long earliestAfter(long earliest, long threshold, long timeNow) {
+        // Ages are compared with ">", so the change is visible one millisecond past the threshold
+        long transition = threshold + 1;
+        return transition > timeNow && transition < earliest ? transition : earliest;
+    }
+
+    /**
+     * Evaluates the status and size of count plants at the given time, in a single pass
+     *
+     * @param createdAt Creation times of the plants
+     * @param wateredAt Last watering times of the plants
+     * @param count     The number of plants, starting from index 0
+     * @param timeNow   The time to evaluate the plants at
+     * @param statuses  Receives the status of each plant
+     * @param sizes     Receives the size of each plant
+     */
+    public static void evaluate(long[] createdAt, long[] wateredAt, int count, long timeNow,
+                                byte[] statuses, byte[] sizes) {
+        evaluateRange(createdAt, wateredAt, 0, count, timeNow, statuses, sizes);
+    }
+
+    /**
+     * Same as {@link #evaluate}, but gardens of PARALLEL_THRESHOLD plants or more are split
+     * across a shared pool with a thread per processor
+     */
+    public static void evaluateParallel(long[] createdAt, long[] wateredAt, int count,
+                                        long timeNow, byte[] statuses, byte[] sizes) {
+        if (count < PARALLEL_THRESHOLD) {
+            evaluateRange(createdAt, wateredAt, 0, count, timeNow, statuses, sizes);
+            return;
+        }
+        evaluate(createdAt, wateredAt, count, timeNow, statuses, sizes,
+                SharedPool.EXECUTOR, SharedPool.PARALLELISM);
+    }
+
+    /**
+     * Same as {@link #evaluate}, but splits large gardens into chunks evaluated on the given
+     * executor. Gardens smaller than PARALLEL_THRESHOLD are evaluated on the calling thread.
+     *
+     * @param executor    The executor to run the chunks on
+     * @param parallelism The number of chunks to split the garden into
+     */
+    public static void evaluate(long[] createdAt, long[] wateredAt, int count, long timeNow,
+                                byte[] statuses, byte[] sizes,
+                                ExecutorService executor, int parallelism) {
+        if (count < PARALLEL_THRESHOLD || parallelism < 2) {
+            evaluateRange(createdAt, wateredAt, 0, count, timeNow, statuses, sizes);
+            return;
+        }
+
+        int chunkSize = (count + parallelism - 1) / parallelism;
+        List<Future<?>> chunks = new ArrayList<>(parallelism);
+        // Keep the first chunk for the calling thread
+        for (int start = chunkSize; start < count; start += chunkSize) {
+            chunks.add(executor.submit(new RangeTask(createdAt, wateredAt,
+                    start, Math.min(count, start + chunkSize), timeNow, statuses, sizes)));
+        }
+        evaluateRange(createdAt, wateredAt, 0, Math.min(count, chunkSize), timeNow, statuses, sizes);
+
+        try {
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while evaluating plants", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to evaluate plants", e.getCause());
+        }
+    }
+
+    private static void evaluateRange(long[] createdAt, long[] wateredAt, int start, int end,
+                                      long timeNow, byte[] statuses, byte[] sizes) {
+        // Compare timestamps against precomputed limits instead of computing ages per plant
+        final long deadBefore = timeNow - MAX_AGE_WITHOUT_WATER;
+        final long dyingBefore = timeNow - DANGER_AGE_WITHOUT_WATER;
+        final long fullyGrownBefore = timeNow - FULLY_GROWN_AGE;
+        final long juvenileBefore = timeNow - JUVENILE_AGE;
+        final long tinyBefore = timeNow - TINY_AGE;
+        for (int i = start; i < end; i++) {
+            long watered = wateredAt[i];
+            statuses[i] = (byte) (watered < deadBefore ? STATUS_DEAD
+                    : watered < dyingBefore ? STATUS_DYING : STATUS_ALIVE);
+            long created = createdAt[i];
+            sizes[i] = (byte) (created < fullyGrownBefore ? SIZE_FULLY_GROWN
+                    : created < juvenileBefore ? SIZE_JUVENILE
+                    : created < tinyBefore ? SIZE_TINY : SIZE_EMPTY);
+        }
+    }
+
+    /**
+     * The pool of evaluateParallel, only created once a garden large enough needs it. Its
+     * threads are daemons, so they never keep the process alive.
+     */
+    private static class SharedPool {
+        static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                Math.max(1, PARALLELISM - 1), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "PlantLifecycle");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    private static class RangeTask implements Callable<Void> {
+        private final long[] mCreatedAt;
+        private final long[] mWateredAt;
+        private final int mStart;
+        private final int mEnd;
+        private final long mTimeNow;
+        private final byte[] mStatuses;
+        private final byte[] mSizes;
+
+        RangeTask(long[] createdAt, long[] wateredAt, int start, int end, long timeNow,
+                  byte[] statuses, byte[] sizes) {
+            mCreatedAt = createdAt;
+            mWateredAt = wateredAt;
+            mStart = start;
+            mEnd = end;
+            mTimeNow = timeNow;
+            mStatuses = statuses;
+            mSizes = sizes;
+        }
+
+        @Override
+        public Void call() {
+            evaluateRange(mCreatedAt, mWateredAt, mStart, mEnd, mTimeNow, mStatuses, mSizes);
+            return null;
+        }
+    }
+}
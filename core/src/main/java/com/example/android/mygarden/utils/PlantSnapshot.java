@@ -0,0 +1,198 @@
+package com.example.android.mygarden.utils;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+/**
+ * An immutable snapshot of plants: their IDs, types and timestamps packed in primitive
+ * arrays, with the status and size of every plant evaluated against a single time. Decoded
+ * once from a cursor and shared by everything that displays plants, so they are consistent
+ * with each other. Safe to read from any thread.
+ * <p>
+ * Plain Java, see PlantSnapshots for decoding cursors and provider bundles.
+ */
+public final class PlantSnapshot {
+
+    /**
+     * The rows a snapshot is decoded from. Matches the methods of android.database.Cursor, so
+     * a cursor only needs to be wrapped to be decoded.
+     */
+    public interface Rows {
+        int getCount();
+
+        boolean moveToPosition(int position);
+
+        long getLong(int column);
+
+        int getInt(int column);
+    }
+
+    public static final PlantSnapshot EMPTY = new PlantSnapshot(
+            new long[0], new int[0], new long[0], new long[0], 0);
+
+    private final long[] mIds;
+    private final int[] mTypes;
+    private final long[] mCreatedAt;
+    private final long[] mWateredAt;
+    private final long mTime;
+    private final byte[] mStatuses;
+    private final byte[] mSizes;
+
+    private PlantSnapshot(long[] ids, int[] types, long[] createdAt, long[] wateredAt, long time) {
+        mIds = ids;
+        mTypes = types;
+        mCreatedAt = createdAt;
+        mWateredAt = wateredAt;
+        mTime = time;
+        mStatuses = new byte[ids.length];
+        mSizes = new byte[ids.length];
+        PlantLifecycle.evaluateParallel(createdAt, wateredAt, ids.length, time, mStatuses, mSizes);
+    }
+
+    /**
+     * Creates a snapshot of the given plants. The arrays are kept, not copied, so they must
+     * not be modified afterwards.
+     *
+     * @param timeNow The time to evaluate the plants at
+     * @return The snapshot
+     */
+    public static PlantSnapshot of(long[] ids, int[] types, long[] createdAt, long[] wateredAt,
+                                   long timeNow) {
+        if (ids.length == 0) return EMPTY;
+        return new PlantSnapshot(ids, types, createdAt, wateredAt, timeNow);
+    }
+
+    /**
+     * Decodes all rows, in row order
+     *
+     * @param rows          The rows to decode
+     * @param idColumn      The column of the plant IDs
+     * @param typeColumn    The column of the plant types
+     * @param createdColumn The column of the creation times
+     * @param wateredColumn The column of the last watering times
+     * @param timeNow       The time to evaluate the plants at
+     * @return The snapshot
+     */
+    public static PlantSnapshot decode(Rows rows, int idColumn, int typeColumn,
+                                       int createdColumn, int wateredColumn, long timeNow) {
+        int count = rows.getCount();
+        if (count == 0) return EMPTY;
+
+        long[] ids = new long[count];
+        int[] types = new int[count];
+        long[] createdAt = new long[count];
+        long[] wateredAt = new long[count];
+        for (int i = 0; i < count && rows.moveToPosition(i); i++) {
+            ids[i] = rows.getLong(idColumn);
+            types[i] = rows.getInt(typeColumn);
+            createdAt[i] = rows.getLong(createdColumn);
+            wateredAt[i] = rows.getLong(wateredColumn);
+        }
+        return new PlantSnapshot(ids, types, createdAt, wateredAt, timeNow);
+    }
+
+    public int size() {
+        return mIds.length;
+    }
+
+    /**
+     * @return The time the plants were evaluated at
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    public long getId(int position) {
+        return mIds[position];
+    }
+
+    public int getType(int position) {
+        return mTypes[position];
+    }
+
+    public long getCreatedAt(int position) {
+        return mCreatedAt[position];
+    }
+
+    public long getWateredAt(int position) {
+        return mWateredAt[position];
+    }
+
+    /**
+     * @return One of the PlantLifecycle STATUS_ values, at getTime()
+     */
+    public int getStatus(int position) {
+        return mStatuses[position];
+    }
+
+    /**
+     * @return One of the PlantLifecycle SIZE_ values, at getTime()
+     */
+    public int getSize(int position) {
+        return mSizes[position];
+    }
+
+    /**
+     * @return Whether the plant can be watered at getTime()
+     */
+    public boolean canWater(int position) {
+        return PlantLifecycle.canWater(mTime - mWateredAt[position]);
+    }
+
+    /**
+     * @return The time after getTime() at which the plant looks different next, or
+     * Long.MAX_VALUE if it won't change anymore
+     */
+    public long getNextTransitionTime(int position) {
+        return PlantLifecycle.getNextTransitionTime(mCreatedAt[position], mWateredAt[position], mTime);
+    }
+
+    /**
+     * Returns the earliest time after timeNow at which any of the plants looks different
+     *
+     * @param timeNow The time to look from
+     * @return The time of the next transition, or Long.MAX_VALUE if no plant will change anymore
+     */
+    public long getEarliestTransitionTime(long timeNow) {
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < mIds.length; i++) {
+            earliest = Math.min(earliest,
+                    PlantLifecycle.getNextTransitionTime(mCreatedAt[i], mWateredAt[i], timeNow));
+        }
+        return earliest;
+    }
+
+    /**
+     * Evaluates the status and size of every plant at another time than getTime()
+     *
+     * @param timeNow  The time to evaluate the plants at
+     * @param statuses Receives the status of each plant, in snapshot order
+     * @param sizes    Receives the size of each plant, in snapshot order
+     */
+    public void evaluate(long timeNow, byte[] statuses, byte[] sizes) {
+        PlantLifecycle.evaluateParallel(mCreatedAt, mWateredAt, mIds.length, timeNow,
+                statuses, sizes);
+    }
+
+    /**
+     * Returns whether a plant looks the same in both snapshots: same type, status and size
+     */
+    public boolean looksSame(int position, PlantSnapshot other, int otherPosition) {
+        return mTypes[position] == other.mTypes[otherPosition]
+                && mStatuses[position] == other.mStatuses[otherPosition]
+                && mSizes[position] == other.mSizes[otherPosition];
+    }
+}